@@ -0,0 +1,236 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 The dd-plist contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dd.plist;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provides random access to the objects of a binary property list without
+ * parsing the whole property list. Objects are looked up by walking the object
+ * references in the binary property list directly, only the objects that are
+ * returned by a query are actually parsed.
+ * <p/>
+ * Paths consist of path components separated by slashes. Each component is either
+ * a dictionary key, an array index or the wildcard <code>*</code>, which matches all
+ * values of a dictionary, array or set. For example the query
+ * <code>Applications/&#42;/CFBundleVersion</code> returns the CFBundleVersion of every entry in the
+ * Applications dictionary of the root dictionary. The empty path denotes the root object.
+ * <p/>
+ * Returned dictionaries and arrays are parsed lazily.
+ * <p/>
+ * An index can be used by several threads. Queries and the lazy parsing of returned
+ * dictionaries and arrays lock the same parser, so they never run at the same time.
+ *
+ * @see BinaryPropertyListParser#parseLazily(java.nio.ByteBuffer)
+ */
+public class BinaryPropertyListIndex {
+
+    private BinaryPropertyListParser parser;
+
+    /**
+     * Creates a new index, use the static <code>open</code> methods.
+     *
+     * @param parser The parser of the indexed property list.
+     */
+    private BinaryPropertyListIndex(BinaryPropertyListParser parser) {
+        this.parser = parser;
+    }
+
+    /**
+     * Opens a binary property list for random access.
+     * The header and trailer are read and the references of all containers are
+     * checked for cycles, but no objects are parsed.
+     *
+     * @param data The buffer containing the binary property list's data.
+     * @return The index for the property list.
+     * @throws PropertyListFormatException When the given data is no valid binary property list.
+     */
+    public static BinaryPropertyListIndex open(ByteBuffer data) throws PropertyListFormatException {
+        return open(data, false);
+    }
+
+    /**
+     * Opens a binary property list file for random access. Unlike values returned
+     * for a ByteBuffer, data objects are always copied, so that they do not keep the
+     * memory-mapped file in use. The index and the returned dictionaries and arrays
+     * still read from the mapped file.
+     *
+     * @param f The binary property list file.
+     * @return The index for the property list.
+     * @throws IOException When the file cannot be read.
+     * @throws PropertyListFormatException When the file is no valid binary property list.
+     * @see BinaryPropertyListParser#map(java.io.File)
+     */
+    public static BinaryPropertyListIndex open(File f) throws IOException, PropertyListFormatException {
+        //data must not be views of a memory-mapped file, which could be changed while they are in use
+        return open(BinaryPropertyListParser.map(f), true);
+    }
+
+    /**
+     * Opens a binary property list for random access.
+     *
+     * @param data     The buffer containing the binary property list's data.
+     * @param copyData Whether data objects are always copied instead of being views of the buffer.
+     * @return The index for the property list.
+     * @throws PropertyListFormatException When the given data is no valid binary property list.
+     */
+    private static BinaryPropertyListIndex open(ByteBuffer data, boolean copyData) throws PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setCopyData(copyData);
+        parser.open(data, true);
+        return new BinaryPropertyListIndex(parser);
+    }
+
+    /**
+     * Gets the root object of the property list.
+     *
+     * @return The root object.
+     * @throws IOException When an error occurs during parsing.
+     * @throws PropertyListFormatException When an error occurs during parsing.
+     */
+    public NSObject getRoot() throws IOException, PropertyListFormatException {
+        synchronized (parser) {
+            return parser.parseOpenedObject(parser.getTopObject());
+        }
+    }
+
+    /**
+     * Gets the object at the given path. If the path contains wildcards, the first match is returned.
+     *
+     * @param path The path of the object.
+     * @return The object or <code>null</code> if no object exists at the given path.
+     * @throws IOException When an error occurs during parsing.
+     * @throws PropertyListFormatException When an error occurs during parsing.
+     */
+    public NSObject get(String path) throws IOException, PropertyListFormatException {
+        synchronized (parser) {
+            List<Integer> refs = new ArrayList<Integer>(1);
+            find(parser.getTopObject(), splitPath(path), 0, refs, true);
+            return refs.isEmpty() ? null : parser.parseOpenedObject(refs.get(0));
+        }
+    }
+
+    /**
+     * Gets all objects matching the given path.
+     *
+     * @param path The path of the objects, which may contain wildcards.
+     * @return The matching objects in the order in which they are stored in the property list.
+     * @throws IOException When an error occurs during parsing.
+     * @throws PropertyListFormatException When an error occurs during parsing.
+     */
+    public List<NSObject> query(String path) throws IOException, PropertyListFormatException {
+        synchronized (parser) {
+            List<Integer> refs = new ArrayList<Integer>();
+            find(parser.getTopObject(), splitPath(path), 0, refs, false);
+            List<NSObject> result = new ArrayList<NSObject>(refs.size());
+            for (int ref : refs) {
+                result.add(parser.parseOpenedObject(ref));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Splits a path into its components.
+     *
+     * @param path The path.
+     * @return The path components.
+     */
+    private static String[] splitPath(String path) {
+        List<String> components = new ArrayList<String>();
+        for (String component : path.split("/")) {
+            if (component.length() > 0) {
+                components.add(component);
+            }
+        }
+        return components.toArray(new String[components.size()]);
+    }
+
+    /**
+     * Collects the references of all objects matching the remaining path components.
+     *
+     * @param obj        The object ID of the current object.
+     * @param path       The path components.
+     * @param index      The index of the path component to match against the current object's entries.
+     * @param refs       The list to which the matching object IDs are added.
+     * @param firstMatch Whether the search stops at the first match.
+     * @return Whether the search should stop.
+     * @throws PropertyListFormatException When the property list contains invalid object references.
+     */
+    private boolean find(int obj, String[] path, int index, List<Integer> refs, boolean firstMatch) throws PropertyListFormatException {
+        if (index == path.length) {
+            refs.add(obj);
+            return firstMatch;
+        }
+        String component = path[index];
+        boolean wildcard = component.equals("*");
+        int type = parser.getObjectType(obj);
+        switch (type) {
+            case 0xD: {
+                //Dictionary
+                int count = parser.getEntryCount(obj);
+                for (int i = 0; i < count; i++) {
+                    if (wildcard || parser.stringEquals(parser.getEntryRef(obj, i), component)) {
+                        if (find(parser.getEntryRef(obj, count + i), path, index + 1, refs, firstMatch)) {
+                            return true;
+                        }
+                        if (!wildcard) {
+                            return false;
+                        }
+                    }
+                }
+                break;
+            }
+            case 0xA:
+            case 0xB:
+            case 0xC: {
+                //Array or set
+                int count = parser.getEntryCount(obj);
+                if (wildcard) {
+                    for (int i = 0; i < count; i++) {
+                        if (find(parser.getEntryRef(obj, i), path, index + 1, refs, firstMatch)) {
+                            return true;
+                        }
+                    }
+                } else if (type == 0xA) {
+                    int i;
+                    try {
+                        i = Integer.parseInt(component);
+                    } catch (NumberFormatException ex) {
+                        return false;
+                    }
+                    if (i >= 0 && i < count) {
+                        return find(parser.getEntryRef(obj, i), path, index + 1, refs, firstMatch);
+                    }
+                }
+                break;
+            }
+        }
+        return false;
+    }
+}
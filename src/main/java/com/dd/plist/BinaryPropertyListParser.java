@@ -27,14 +27,66 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Parses property lists that are in Apple's binary format.
  * Use this class when you are sure about the format of the property list.
  * Otherwise use the PropertyListParser class.
  * <p/>
- * Parsing is done by calling the static <code>parse</code> methods.
+ * Parsing is done by calling the static <code>parse</code> methods, or by
+ * creating a parser which is then reused to parse many property lists with
+ * its <code>read</code> methods.
+ * Property lists can be parsed from any ByteBuffer, files are memory-mapped
+ * so that the trailer, offset table and objects are read in place without copying
+ * the whole file onto the heap.
+ * <p/>
+ * Objects that are referenced multiple times inside the property list are
+ * only parsed once, all references to them share the same NSObject instance.
+ * <p/>
+ * When only a small part of a large property list is needed, it can be parsed
+ * lazily. Then the values of dictionaries and arrays are only parsed when they
+ * are accessed for the first time.
+ * <p/>
+ * Alternatively the contents of a property list can be reported to a
+ * PropertyListHandler without creating any NSObjects.
+ * <p/>
+ * The header, trailer and all lengths and offsets stored in a property list are
+ * checked against the size of the property list before anything is allocated.
+ * Further limits for untrusted input can be given as ParseLimits.
+ * <p/>
+ * Very large property lists can be parsed in parallel by passing an ExecutorService,
+ * then the entries of large arrays, sets and dictionaries are parsed by several threads.
+ * <p/>
+ * To save memory when many property lists are kept in memory, dictionary keys and
+ * short ASCII strings can be shared between property lists using a StringPool.
+ * <p/>
+ * Large data objects parsed from a ByteBuffer are not copied, the resulting NSData
+ * objects are read-only views of the buffer. Data parsed with <code>parse(byte[])</code>
+ * or <code>parse(File)</code> is always copied.
+ * <p/>
+ * Property lists of the formats v0.x and v1.0, including null, URL, UUID, UTF-8 string
+ * and ordered set objects, are supported. The formats v1.5 and v1.6 ("bplist15" and
+ * "bplist16") reference objects by their position instead of through an offset table
+ * and are rejected, like all other unknown versions.
  *
  * @author Daniel Dreibrodt
  */
@@ -45,7 +97,7 @@ public class BinaryPropertyListParser {
     /**
      * property list in bytes *
      */
-    private byte[] bytes;
+    private ByteBuffer buffer;
     /**
      * Length of an offset definition in bytes *
      */
@@ -67,118 +119,1498 @@ public class BinaryPropertyListParser {
      */
     private int offsetTableOffset;
     /**
-     * The table holding the information at which offset each object is found *
+     * The objects that have already been parsed, indexed by their object number *
+     */
+    private NSObject[] parsedObjects;
+    /**
+     * The parsing state of each object, see <code>UNPARSED</code>, <code>PARSING</code> and <code>PARSED</code> *
+     */
+    private byte[] parseStates;
+    /**
+     * Whether the values of dictionaries and arrays are only parsed when they are accessed *
+     */
+    private boolean lazy;
+    /**
+     * The objects that have already been parsed in lazy mode, by object number *
+     */
+    private HashMap<Integer, NSObject> lazyParsedObjects;
+    /**
+     * The objects that are being parsed in lazy mode *
+     */
+    private HashSet<Integer> lazyParsingObjects;
+    /**
+     * The containers that are currently reported to a PropertyListHandler or checked for cycles, from the top object downwards.
+     * Each container takes <code>CONTAINER_FRAME_SIZE</code> elements: the object ID, the object type,
+     * the offset of the first reference, the number of entries and the index of the next entry *
+     */
+    private int[] containerStack;
+    /**
+     * The IDs of the containers that are currently reported to a PropertyListHandler *
+     */
+    private BitSet handlerContainers;
+    /**
+     * The number of containers that are currently reported to a PropertyListHandler *
+     */
+    private int handlerDepth;
+    /**
+     * The limits the parsed property list has to satisfy *
+     */
+    private ParseLimits limits = new ParseLimits();
+    /**
+     * The number of containers that are currently parsed *
+     */
+    private int depth;
+    /**
+     * The executor parsing the entries of large containers in parallel, or null *
+     */
+    private ExecutorService executor;
+    /**
+     * The objects that have already been parsed in parallel mode, indexed by their object number *
+     */
+    private AtomicReferenceArray<NSObject> concurrentObjects;
+    /**
+     * The state of the tasks parsing entries of a container in parallel mode *
      */
-    private int[] offsetTable;
+    private ThreadLocal<TaskState> taskState;
+    /**
+     * The pool of dictionary keys and short strings, or null *
+     */
+    private StringPool stringPool;
+    /**
+     * Whether data objects are always copied instead of being views of the buffer *
+     */
+    private boolean copyData;
+    /**
+     * The offset that is currently validated *
+     */
+    private int validationOffset;
+    /**
+     * The ID of the object that is currently validated *
+     */
+    private int validationObject;
+    /**
+     * Whether the property list is validated, then deviations that the parser tolerates are errors *
+     */
+    private boolean validating;
+
+    /**
+     * The file size in bytes from which on files are memory-mapped instead of read into memory.
+     */
+    public static final int MAPPING_THRESHOLD = 64 * 1024;
+
+    private static final byte UNPARSED = 0;
+    private static final byte PARSING = 1;
+    private static final byte PARSED = 2;
+
+    private static final int CONTAINER_FRAME_SIZE = 5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     /**
-     * Protected constructor so that instantiation is fully controlled by the
-     * static parse methods.
+     * The minimum number of entries of an array, set or dictionary for its entries to be parsed in parallel.
+     */
+    public static final int PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * The minimum length of data objects parsed from a ByteBuffer to be views of the buffer instead of copies.
+     */
+    public static final int DATA_VIEW_THRESHOLD = 1024;
+
+    /**
+     * Creates a new parser. A parser can parse any number of property lists one
+     * after another with its <code>read</code> methods. It keeps its internal arrays
+     * between calls, so keeping one parser per thread saves most of the allocations
+     * otherwise needed for every property list. A parser must not be used by several
+     * threads at once. After a property list has been read the parser does not keep
+     * any references to it.
      *
-     * @see BinaryPropertyListParser#parse(byte[])
+     * @see BinaryPropertyListParser#read(java.nio.ByteBuffer)
      */
-    protected BinaryPropertyListParser() {
+    public BinaryPropertyListParser() {
         /** empty **/
     }
 
+    /**
+     * Gets the limits the property lists read by this parser have to satisfy.
+     * Unless other limits have been set, each parser has its own limits, which
+     * can be changed through the returned object.
+     *
+     * @return The limits.
+     */
+    public ParseLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Sets the limits the property lists read by this parser have to satisfy.
+     *
+     * @param limits The limits, or <code>null</code> to only check the structure of the property lists.
+     * @see #parse(java.nio.ByteBuffer, ParseLimits)
+     */
+    public void setLimits(ParseLimits limits) {
+        this.limits = limits != null ? limits : new ParseLimits();
+    }
+
+    /**
+     * Gets the pool from which dictionary keys and short ASCII strings are taken.
+     *
+     * @return The string pool, or <code>null</code> if strings are not pooled.
+     */
+    public StringPool getStringPool() {
+        return stringPool;
+    }
+
+    /**
+     * Sets the pool from which dictionary keys and short ASCII strings are taken.
+     *
+     * @param stringPool The string pool, or <code>null</code> if strings should not be pooled.
+     * @see #parse(java.nio.ByteBuffer, StringPool)
+     */
+    public void setStringPool(StringPool stringPool) {
+        this.stringPool = stringPool;
+    }
+
+    /**
+     * Gets the executor parsing the entries of large containers in parallel.
+     *
+     * @return The executor, or <code>null</code> if property lists are parsed by the calling thread only.
+     */
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor parsing the entries of large containers in parallel.
+     *
+     * @param executor The executor, or <code>null</code> to parse property lists with the calling thread only.
+     * @see #parse(java.nio.ByteBuffer, java.util.concurrent.ExecutorService)
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
     /**
      * Parses a binary property list from a byte array.
      *
      * @param data The binary property list's data.
      * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
-     * @throws Exception When an error occurs during parsing.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds the limits.
+     * @see #parse(byte[])
      */
-    public static NSObject parse(byte[] data) throws IOException, PropertyListFormatException {
-        BinaryPropertyListParser parser = new BinaryPropertyListParser();
-        return parser.doParse(data);
+    public NSObject read(byte[] data) throws IOException, PropertyListFormatException {
+        //the array belongs to the caller, so data must not share it
+        copyData = true;
+        return doParse(ByteBuffer.wrap(data));
     }
 
     /**
-     * Parses a binary property list from a byte array.
+     * Parses a binary property list from a byte buffer.
      *
-     * @param data The binary property list's data.
+     * @param data The buffer containing the binary property list's data.
      * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
-     * @throws Exception When an error occurs during parsing.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds the limits.
+     * @see #parse(java.nio.ByteBuffer)
      */
-    private NSObject doParse(byte[] data) throws IOException, PropertyListFormatException {
-        bytes = data;
-        String magic = new String(copyOfRange(bytes, 0, 8));
-        if (!magic.startsWith("bplist")) {
-            throw new IllegalArgumentException("The given data is no binary property list. Wrong magic bytes: " + magic);
+    public NSObject read(ByteBuffer data) throws IOException, PropertyListFormatException {
+        copyData = false;
+        return doParse(data);
+    }
+
+    /**
+     * Parses a binary property list file.
+     *
+     * @param f The binary property list file
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds the limits.
+     * @see #parse(java.io.File)
+     */
+    public NSObject read(File f) throws IOException, PropertyListFormatException {
+        if (f.length() > limits.getMaxBytes()) {
+            throw new PropertyListFormatException("The given binary property list is too large (" + f.length() + " bytes, the limit is " + limits.getMaxBytes() + " bytes)");
         }
+        //data must not be views of a memory-mapped file, which could be changed while they are in use
+        copyData = true;
+        return doParse(map(f));
+    }
 
-        majorVersion = magic.charAt(6) - 0x30; //ASCII number
-        minorVersion = magic.charAt(7) - 0x30; //ASCII number
+    /**
+     * Parses a binary property list from an input stream. At most one byte more
+     * than the maximum size given by the limits is read from the stream.
+     *
+     * @param is The input stream that points to the property list's data.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds the limits.
+     * @see #parse(java.io.InputStream)
+     */
+    public NSObject read(InputStream is) throws IOException, PropertyListFormatException {
+        return read(is, 0);
+    }
 
-        // 0.0 - OS X Tiger and earlier
-        // 0.1 - Leopard
-        // 0.? - Snow Leopard
-        // 1.5 - Lion
-        // 2.0 - Snow Lion
+    /**
+     * Parses a binary property list from an input stream whose size is known in advance,
+     * e.g. from the headers of a network protocol. The stream is read in chunks into a buffer
+     * of the expected size. At most one byte more than the maximum size given by the limits
+     * is read from the stream, and reading stops as soon as the first bytes show that the
+     * stream does not contain a binary property list.
+     *
+     * @param is           The input stream that points to the property list's data.
+     * @param expectedSize The number of bytes the stream is expected to contain, or 0 if unknown.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds the limits.
+     */
+    public NSObject read(InputStream is, int expectedSize) throws IOException, PropertyListFormatException {
+        int max = limits.getMaxBytes() < Integer.MAX_VALUE ? (int) limits.getMaxBytes() + 1 : Integer.MAX_VALUE;
+        ByteBuffer buf = PropertyListParser.readBuffer(is, max, expectedSize, "bplist");
+        is.close();
+        copyData = false;
+        return doParse(buf);
+    }
 
-        if (majorVersion > 0) {
-            throw new IllegalArgumentException("Unsupported binary property list format: v" + majorVersion + "." + minorVersion + ". " +
-                    "Version 1.0 and later are not yet supported.");
+    /**
+     * Parses a binary property list from a byte buffer and reports its contents to the given handler.
+     *
+     * @param data    The buffer containing the binary property list's data.
+     * @param handler The handler receiving the contents of the property list.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds the limits.
+     * @see #parse(java.nio.ByteBuffer, PropertyListHandler)
+     */
+    public void read(ByteBuffer data, PropertyListHandler handler) throws IOException, PropertyListFormatException {
+        load(data);
+        if (containerStack == null) {
+            containerStack = new int[16 * CONTAINER_FRAME_SIZE];
+            handlerContainers = new BitSet(numObjects);
+        } else {
+            handlerContainers.clear();
+        }
+        handlerDepth = 0;
+        try {
+            visitObjects(topObject, handler);
+        } finally {
+            buffer = null;
         }
+    }
 
-        /*
-         * Handle trailer, last 32 bytes of the file
-         */
-        byte[] trailer = copyOfRange(bytes, bytes.length - 32, bytes.length);
-        //6 null bytes (index 0 to 5)
-        offsetSize = (int) parseUnsignedInt(copyOfRange(trailer, 6, 7));
-        //System.out.println("offsetSize: "+offsetSize);
-        objectRefSize = (int) parseUnsignedInt(copyOfRange(trailer, 7, 8));
-        //System.out.println("objectRefSize: "+objectRefSize);
-        numObjects = (int) parseUnsignedInt(copyOfRange(trailer, 8, 16));
-        //System.out.println("numObjects: "+numObjects);
-        topObject = (int) parseUnsignedInt(copyOfRange(trailer, 16, 24));
-        //System.out.println("topObject: "+topObject);
-        offsetTableOffset = (int) parseUnsignedInt(copyOfRange(trailer, 24, 32));
-        //System.out.println("offsetTableOffset: "+offsetTableOffset);
+    /**
+     * Releases the internal arrays of this parser. Call this method after parsing an
+     * unusually large property list if the parser is kept for parsing smaller ones.
+     */
+    public void reset() {
+        buffer = null;
+        parsedObjects = null;
+        parseStates = null;
+        concurrentObjects = null;
+        containerStack = null;
+        handlerContainers = null;
+    }
 
-        /*
-         * Handle offset table
-         */
-        offsetTable = new int[numObjects];
+    /**
+     * Parses a binary property list from a byte array.
+     *
+     * @param data The binary property list's data.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws Exception When an error occurs during parsing.
+     */
+    public static NSObject parse(byte[] data) throws IOException, PropertyListFormatException {
+        return new BinaryPropertyListParser().read(data);
+    }
 
-        for (int i = 0; i < numObjects; i++) {
-            byte[] offsetBytes = copyOfRange(bytes, offsetTableOffset + i * offsetSize, offsetTableOffset + (i + 1) * offsetSize);
-            offsetTable[i] = (int) parseUnsignedInt(offsetBytes);
-            /*System.out.print("Offset for Object #"+i+" is "+offsetTable[i]+" [");
-            for(byte b:offsetBytes) System.out.print(Integer.toHexString(b)+" ");
-            System.out.println("]");*/
-        }
+    /**
+     * Parses a binary property list from a byte buffer. The property list is
+     * read from the buffer's position up to its limit. Only absolute reads are
+     * performed so the buffer's position and limit are not changed and the same
+     * buffer, e.g. a <code>MappedByteBuffer</code>, can be parsed by several threads at once.
+     * <p/>
+     * Data objects of at least <code>DATA_VIEW_THRESHOLD</code> bytes are views of
+     * the buffer, so the buffer must not be modified as long as they are in use.
+     *
+     * @param data The buffer containing the binary property list's data.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws Exception When an error occurs during parsing.
+     */
+    public static NSObject parse(ByteBuffer data) throws IOException, PropertyListFormatException {
+        return new BinaryPropertyListParser().read(data);
+    }
+
+    /**
+     * Parses a binary property list from a byte buffer. Property lists exceeding
+     * the given limits are rejected before the affected objects are allocated.
+     *
+     * @param data   The buffer containing the binary property list's data.
+     * @param limits The limits the property list has to satisfy.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds one of the limits.
+     * @see #parse(java.nio.ByteBuffer)
+     */
+    public static NSObject parse(ByteBuffer data, ParseLimits limits) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setLimits(limits);
+        return parser.read(data);
+    }
 
-        return parseObject(topObject);
+    /**
+     * Parses a binary property list from a byte buffer. Dictionary keys and short ASCII
+     * strings are taken from the given pool, so that equal strings are only stored once.
+     * To share strings between several property lists pass the same pool when parsing them.
+     *
+     * @param data       The buffer containing the binary property list's data.
+     * @param stringPool The pool of strings.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws Exception When an error occurs during parsing.
+     * @see #parse(java.nio.ByteBuffer)
+     */
+    public static NSObject parse(ByteBuffer data, StringPool stringPool) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setStringPool(stringPool);
+        return parser.read(data);
     }
 
     /**
-     * Parses a binary property list from an input stream.
+     * Parses a binary property list file taking dictionary keys and short
+     * ASCII strings from the given pool.
      *
-     * @param is The input stream that points to the property list's data.
+     * @param f          The binary property list file
+     * @param stringPool The pool of strings.
      * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
      * @throws Exception When an error occurs during parsing.
+     * @see #parse(java.nio.ByteBuffer, StringPool)
      */
-    public static NSObject parse(InputStream is) throws IOException, PropertyListFormatException {
-        //Read all bytes into a list
-        byte[] buf = PropertyListParser.readAll(is, Integer.MAX_VALUE);
-        is.close();
-        return parse(buf);
+    public static NSObject parse(File f, StringPool stringPool) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setStringPool(stringPool);
+        return parser.read(f);
     }
 
     /**
-     * Parses a binary property list file.
+     * Parses a binary property list from a byte buffer using several threads.
+     * The entries of arrays, sets and dictionaries with at least <code>PARALLEL_THRESHOLD</code>
+     * entries are split into chunks that are parsed by tasks submitted to the given executor.
+     * Only the calling thread splits containers, the tasks parse their chunks on their own. The result
+     * is the same as when parsing the property list with <code>parse(ByteBuffer)</code>.
+     * <p/>
+     * This method must not be called from a task of the given executor if the executor has
+     * a bounded number of threads, as it waits for the submitted tasks to complete.
+     *
+     * @param data     The buffer containing the binary property list's data.
+     * @param executor The executor parsing the entries of large containers.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws Exception When an error occurs during parsing.
+     * @see #parse(java.nio.ByteBuffer)
+     */
+    public static NSObject parse(ByteBuffer data, ExecutorService executor) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setExecutor(executor);
+        return parser.read(data);
+    }
+
+    /**
+     * Parses a binary property list file using several threads.
+     *
+     * @param f        The binary property list file
+     * @param executor The executor parsing the entries of large containers.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws Exception When an error occurs during parsing.
+     * @see #parse(java.nio.ByteBuffer, java.util.concurrent.ExecutorService)
+     */
+    public static NSObject parse(File f, ExecutorService executor) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setExecutor(executor);
+        return parser.read(f);
+    }
+
+    /**
+     * Parses a binary property list from a byte buffer without parsing the contents
+     * of dictionaries and arrays up front. A value stored in a NSDictionary or NSArray
+     * is only parsed when it is accessed for the first time, so the time and memory needed
+     * depend on how much of the property list is actually accessed.
+     * <p/>
+     * The returned objects keep a reference to the buffer until all of their values have been parsed.
+     * Thus the buffer must not be modified as long as the objects are in use.
+     * Errors encountered while parsing a value on access are thrown as RuntimeException.
+     * Cyclic references are rejected up front, by following the references of all
+     * containers without parsing any objects.
+     * The returned objects can be read by several threads at the same time, values are
+     * parsed while holding the lock of the dictionary or array containing them.
+     *
+     * @param data The buffer containing the binary property list's data.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws Exception When an error occurs during parsing.
+     * @see #parse(java.nio.ByteBuffer)
+     */
+    public static NSObject parseLazily(ByteBuffer data) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.lazy = true;
+        return parser.doParse(data);
+    }
+
+    /**
+     * Parses a binary property list file without parsing the contents of dictionaries
+     * and arrays up front. Unlike values parsed from a ByteBuffer, data objects are
+     * always copied, so that they do not keep the memory-mapped file in use. The dictionaries
+     * and arrays still read from the mapped file until all of their values have been parsed.
      *
      * @param f The binary property list file
      * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
      * @throws Exception When an error occurs during parsing.
+     * @see #parseLazily(java.nio.ByteBuffer)
+     */
+    public static NSObject parseLazily(File f) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.lazy = true;
+        //data must not be views of a memory-mapped file, which could be changed while they are in use
+        parser.copyData = true;
+        return parser.doParse(map(f));
+    }
+
+    /**
+     * Parses a binary property list from a byte buffer and reports its contents
+     * to the given handler. No NSObjects are created, the memory needed does
+     * not depend on the size of the property list but only on how deeply it is nested.
+     *
+     * @param data    The buffer containing the binary property list's data.
+     * @param handler The handler receiving the contents of the property list.
+     * @throws Exception When an error occurs during parsing.
+     */
+    public static void parse(ByteBuffer data, PropertyListHandler handler) throws IOException, PropertyListFormatException {
+        new BinaryPropertyListParser().read(data, handler);
+    }
+
+    /**
+     * Parses a binary property list from a byte buffer and reports its contents
+     * to the given handler. Parsing stops as soon as one of the given limits is exceeded.
+     *
+     * @param data    The buffer containing the binary property list's data.
+     * @param handler The handler receiving the contents of the property list.
+     * @param limits  The limits the property list has to satisfy.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds one of the limits.
+     * @see #parse(java.nio.ByteBuffer, PropertyListHandler)
+     */
+    public static void parse(ByteBuffer data, PropertyListHandler handler, ParseLimits limits) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setLimits(limits);
+        parser.read(data, handler);
+    }
+
+    /**
+     * Parses a binary property list file and reports its contents to the given handler.
+     *
+     * @param f       The binary property list file
+     * @param handler The handler receiving the contents of the property list.
+     * @throws Exception When an error occurs during parsing.
+     * @see #parse(java.nio.ByteBuffer, PropertyListHandler)
+     */
+    public static void parse(File f, PropertyListHandler handler) throws IOException, PropertyListFormatException {
+        parse(map(f), handler);
+    }
+
+    /**
+     * Checks whether a buffer contains a well-formed binary property list without
+     * parsing it. The magic bytes, the trailer and the offset table are checked, as
+     * well as the marker, the length and the references of every object listed in
+     * the offset table. Containers must not contain themselves and dictionary keys
+     * have to be strings. As no NSObjects are created this is much faster than parsing.
+     *
+     * @param data The buffer containing the binary property list's data.
+     * @return The result, describing the first error that was found.
+     */
+    public static ValidationResult validate(ByteBuffer data) {
+        return new BinaryPropertyListParser().check(data);
+    }
+
+    /**
+     * Checks whether a buffer contains a well-formed binary property list that satisfies
+     * the given limits, without parsing it. The nesting depth is not checked.
+     *
+     * @param data   The buffer containing the binary property list's data.
+     * @param limits The limits the property list has to satisfy.
+     * @return The result, describing the first error that was found.
+     * @see #validate(java.nio.ByteBuffer)
+     */
+    public static ValidationResult validate(ByteBuffer data, ParseLimits limits) {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setLimits(limits);
+        return parser.check(data);
+    }
+
+    /**
+     * Checks whether a buffer contains a well-formed binary property list that satisfies
+     * the limits of this parser, without parsing it. The nesting depth is not checked.
+     *
+     * @param data The buffer containing the binary property list's data.
+     * @return The result, describing the first error that was found.
+     * @see #validate(java.nio.ByteBuffer)
+     */
+    public ValidationResult check(ByteBuffer data) {
+        validationObject = -1;
+        //errors found while reading the header and trailer belong to the trailer, except for the size and the magic bytes
+        int size = data.remaining();
+        validationOffset = size >= 8 + 32 && size <= limits.getMaxBytes() ? size - 32 : 0;
+        validating = true;
+        try {
+            load(data);
+            if (parseStates == null || parseStates.length < numObjects) {
+                parseStates = new byte[numObjects];
+            }
+            try {
+                checkObjects();
+                checkCycles();
+            } finally {
+                //the parse states of a parser are cleared when it is done
+                Arrays.fill(parseStates, 0, numObjects, UNPARSED);
+            }
+            return new ValidationResult(null, -1, -1);
+        } catch (PropertyListFormatException ex) {
+            return new ValidationResult(ex.getMessage(), validationOffset, validationObject);
+        } catch (IllegalArgumentException ex) {
+            return new ValidationResult(ex.getMessage(), 0, -1);
+        } catch (RuntimeException ex) {
+            //any other error while reading malformed data is reported like a format error
+            return new ValidationResult("The given binary property list could not be read: " + ex, validationOffset, validationObject);
+        } finally {
+            buffer = null;
+            validating = false;
+        }
+    }
+
+    /**
+     * Checks the marker, the length and the references of every object.
+     * All objects except containers are marked as <code>PARSED</code> in <code>parseStates</code>.
+     *
+     * @throws PropertyListFormatException When an object is invalid.
+     */
+    private void checkObjects() throws PropertyListFormatException {
+        for (int obj = 0; obj < numObjects; obj++) {
+            validationObject = obj;
+            validationOffset = offsetTableOffset + obj * offsetSize;
+            int offset = getObjectOffset(obj);
+            validationOffset = offset;
+            byte type = buffer.get(offset);
+            int objType = (type & 0xF0) >> 4; //First  4 bits
+            int objInfo = (type & 0x0F);      //Second 4 bits
+            switch (objType) {
+                case 0x0: {
+                    if (objInfo == 0xC || objInfo == 0xD) {
+                        checkURL(offset);
+                    } else if (objInfo == 0xE) {
+                        checkRange(offset, offset + 17);
+                    } else if (objInfo != 0x0 && objInfo != 0x8 && objInfo != 0x9 && objInfo != 0xF) {
+                        throw new PropertyListFormatException("The given binary property list contains an object of unknown type (" + objType + "," + objInfo + ")");
+                    }
+                    break;
+                }
+                case 0x1: {
+                    if (objInfo > 4) {
+                        throw new PropertyListFormatException("The given binary property list contains an integer of an invalid size (" + (1 << objInfo) + " bytes)");
+                    }
+                    checkRange(offset, offset + 1 + (1 << objInfo));
+                    break;
+                }
+                case 0x2: {
+                    if (objInfo != 2 && objInfo != 3) {
+                        throw new PropertyListFormatException("The given binary property list contains a real number of an invalid size (" + (1 << objInfo) + " bytes)");
+                    }
+                    checkRange(offset, offset + 1 + (1 << objInfo));
+                    break;
+                }
+                case 0x3: {
+                    if (objInfo != 0x3) {
+                        throw new PropertyListFormatException("The given binary property list contains a date object of an unknown type ("+objInfo+")");
+                    }
+                    checkRange(offset, offset + 9);
+                    break;
+                }
+                case 0x4:
+                case 0x5:
+                case 0x6:
+                case 0x7: {
+                    readLengthAndOffset(objInfo, offset);
+                    break;
+                }
+                case 0x8: {
+                    checkRange(offset, offset + 2 + objInfo);
+                    break;
+                }
+                case 0xA:
+                case 0xB:
+                case 0xC:
+                case 0xD: {
+                    int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
+                    int length = lenAndoffset[0];
+                    int refOffset = offset + lenAndoffset[1];
+                    int refs = objType == 0xD ? 2 * length : length;
+                    for (int i = 0; i < refs; i++) {
+                        validationOffset = refOffset + i * objectRefSize;
+                        int ref = readObjectRef(validationOffset);
+                        if (ref < 0 || ref >= numObjects) {
+                            throw new PropertyListFormatException("The given binary property list contains an invalid object reference (" + ref + ")");
+                        }
+                        if (objType == 0xD && i < length) {
+                            int keyType = (buffer.get(getObjectOffset(ref)) & 0xF0) >> 4;
+                            if (keyType != 0x5 && keyType != 0x6 && keyType != 0x7) {
+                                throw new PropertyListFormatException("The given binary property list contains a dictionary key that is no string (object #" + ref + ")");
+                            }
+                        }
+                    }
+                    break;
+                }
+                default: {
+                    throw new PropertyListFormatException("The given binary property list contains an object of unknown type (" + objType + ")");
+                }
+            }
+            if (objType < 0xA) {
+                parseStates[obj] = PARSED;
+            }
+        }
+    }
+
+    /**
+     * Checks a URL object, which consists of the URL markers and the strings
+     * stored directly after them.
+     *
+     * @param offset The offset of the URL object.
+     * @throws PropertyListFormatException When the URL is invalid.
+     * @see #readURL(int, int[])
+     */
+    private void checkURL(int offset) throws PropertyListFormatException {
+        //each URL with a base URL is followed by the base URL, then the strings follow in reverse order
+        int pos = offset;
+        int strings = 1;
+        while ((buffer.get(pos) & 0x0F) == 0xD) {
+            checkRange(offset, pos + 2);
+            pos++;
+            int baseType = buffer.get(pos) & 0xFF;
+            if (baseType != 0x0C && baseType != 0x0D) {
+                throw new PropertyListFormatException("The given binary property list contains a URL at offset " + offset + " with an invalid base URL");
+            }
+            strings++;
+        }
+        pos++;
+        for (int i = 0; i < strings; i++) {
+            checkRange(offset, pos + 1);
+            int type = buffer.get(pos);
+            int objType = (type & 0xF0) >> 4;
+            if (objType != 0x5 && objType != 0x6 && objType != 0x7) {
+                throw new PropertyListFormatException("The given binary property list contains a URL at offset " + offset + " that is no string");
+            }
+            int[] lenAndoffset = readLengthAndOffset(type & 0x0F, pos);
+            pos += lenAndoffset[1] + (objType == 0x6 ? 2 * lenAndoffset[0] : lenAndoffset[0]);
+        }
+    }
+
+    /**
+     * Checks that no container contains itself, by a depth-first search through
+     * all containers. The search uses <code>parseStates</code> to mark the containers
+     * on the current path and those that have been completely searched. Objects other
+     * than containers are marked as searched when they are reached, unless
+     * <code>checkObjects</code> has done so already. Only the object markers and the
+     * references are read, no objects are created.
+     *
+     * @throws PropertyListFormatException When a container contains itself or a reference is invalid.
+     */
+    private void checkCycles() throws PropertyListFormatException {
+        if (containerStack == null) {
+            containerStack = new int[16 * CONTAINER_FRAME_SIZE];
+        }
+        for (int root = 0; root < numObjects; root++) {
+            int obj = root;
+            int stackSize = 0;
+            while (parseStates[obj] == UNPARSED) {
+                int offset = getObjectOffset(obj);
+                int objType = (buffer.get(offset) & 0xF0) >> 4;
+                if (objType >= 0xA && objType <= 0xD) {
+                    int[] lenAndoffset = readLengthAndOffset(buffer.get(offset) & 0x0F, offset);
+                    int refs = objType == 0xD ? 2 * lenAndoffset[0] : lenAndoffset[0];
+                    checkRange(offset, offset + lenAndoffset[1] + (long) refs * objectRefSize);
+                    pushContainer(stackSize++, obj, objType, offset + lenAndoffset[1], refs);
+                    parseStates[obj] = PARSING;
+                } else {
+                    parseStates[obj] = PARSED;
+                }
+                //find the next unsearched container, completing the containers whose entries have all been searched
+                while (stackSize > 0 && parseStates[obj] != UNPARSED) {
+                    int frame = (stackSize - 1) * CONTAINER_FRAME_SIZE;
+                    int i = containerStack[frame + 4]++;
+                    if (i < containerStack[frame + 3]) {
+                        validationOffset = containerStack[frame + 2] + i * objectRefSize;
+                        obj = readObjectRef(validationOffset);
+                        if (obj < 0 || obj >= numObjects) {
+                            validationObject = containerStack[frame];
+                            throw new PropertyListFormatException("The given binary property list contains an invalid object reference (" + obj + ")");
+                        }
+                        if (parseStates[obj] == PARSING) {
+                            validationObject = containerStack[frame];
+                            throw new PropertyListFormatException("The given binary property list contains a cyclic reference to object #" + obj);
+                        }
+                    } else {
+                        parseStates[containerStack[frame]] = PARSED;
+                        stackSize--;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a binary property list from a byte buffer.
+     *
+     * @param data The buffer containing the binary property list's data.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws Exception When an error occurs during parsing.
+     */
+    private NSObject doParse(ByteBuffer data) throws IOException, PropertyListFormatException {
+        open(data, lazy);
+        if (lazy) {
+            return parseObject(topObject);
+        }
+        try {
+            return parseObject(topObject);
+        } finally {
+            //the parsed objects must not be kept when the parser is reused
+            Arrays.fill(parsedObjects, 0, numObjects, null);
+            Arrays.fill(parseStates, 0, numObjects, UNPARSED);
+            concurrentObjects = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Sets whether data objects are always copied instead of being views of the buffer.
+     *
+     * @param copyData Whether data objects are copied.
+     */
+    void setCopyData(boolean copyData) {
+        this.copyData = copyData;
+    }
+
+    /**
+     * Reads the header and the trailer of a binary property list so that its objects can be parsed.
+     *
+     * @param data The buffer containing the binary property list's data.
+     * @param lazy Whether the values of dictionaries and arrays are only parsed when they are accessed.
+     * @throws PropertyListFormatException When the header or trailer are invalid.
+     */
+    void open(ByteBuffer data, boolean lazy) throws PropertyListFormatException {
+        load(data);
+        this.lazy = lazy;
+        depth = 0;
+        if (lazy) {
+            //containers are returned before their entries are parsed, so cycles are searched for up front
+            if (parseStates == null || parseStates.length < numObjects) {
+                parseStates = new byte[numObjects];
+            }
+            try {
+                checkCycles();
+            } finally {
+                Arrays.fill(parseStates, 0, numObjects, UNPARSED);
+            }
+            lazyParsedObjects = new HashMap<Integer, NSObject>();
+            lazyParsingObjects = new HashSet<Integer>();
+        } else {
+            //the arrays of a previous property list can be reused, they have been cleared after parsing it
+            if (parsedObjects == null || parsedObjects.length < numObjects) {
+                parsedObjects = new NSObject[numObjects];
+            }
+            if (parseStates == null || parseStates.length < numObjects) {
+                parseStates = new byte[numObjects];
+            }
+            if (executor != null) {
+                concurrentObjects = new AtomicReferenceArray<NSObject>(numObjects);
+                if (taskState == null) {
+                    taskState = new ThreadLocal<TaskState>();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the header and the trailer of a binary property list.
+     *
+     * @param data The buffer containing the binary property list's data.
+     * @throws PropertyListFormatException When the header or trailer are invalid.
+     */
+    private void load(ByteBuffer data) throws PropertyListFormatException {
+        buffer = data.slice();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() > limits.getMaxBytes()) {
+            throw new PropertyListFormatException("The given binary property list is too large (" + buffer.limit() + " bytes, the limit is " + limits.getMaxBytes() + " bytes)");
+        }
+        if (buffer.limit() < 8 + 32) {
+            throw new PropertyListFormatException("The given data is too short to be a binary property list (" + buffer.limit() + " bytes)");
+        }
+        String magic = new String(readBytes(0, 8));
+        if (!magic.startsWith("bplist")) {
+            throw new IllegalArgumentException("The given data is no binary property list. Wrong magic bytes: " + magic);
+        }
+
+        majorVersion = magic.charAt(6) - 0x30; //ASCII number
+        minorVersion = magic.charAt(7) - 0x30; //ASCII number
+
+        // 0.0 - OS X Tiger and earlier
+        // 0.1 - Leopard
+        // 0.? - Snow Leopard
+        // 1.5 - Lion
+        // 2.0 - Snow Lion
+
+        //Version 1.0 property lists only differ from version 0.x by the additional object types,
+        //versions 1.5 and 1.6 have no offset table and no trailer
+        if (majorVersion == 1 && (minorVersion == 5 || minorVersion == 6)) {
+            throw new PropertyListFormatException("Unsupported binary property list format: v1." + minorVersion + ". " +
+                    "Property lists without an offset table and a trailer (bplist15, bplist16) are not supported.");
+        }
+        if (majorVersion != 0 && !(majorVersion == 1 && minorVersion == 0)) {
+            throw new PropertyListFormatException("Unsupported binary property list format: v" + majorVersion + "." + minorVersion + ". " +
+                    "Only the formats v0.x and v1.0 are supported.");
+        }
+
+        /*
+         * Handle trailer, last 32 bytes of the file
+         */
+        int trailerOffset = buffer.limit() - 32;
+        //6 null bytes (index 0 to 5)
+        offsetSize = (int) parseUnsignedInt(buffer, trailerOffset + 6, trailerOffset + 7);
+        //System.out.println("offsetSize: "+offsetSize);
+        objectRefSize = (int) parseUnsignedInt(buffer, trailerOffset + 7, trailerOffset + 8);
+        //System.out.println("objectRefSize: "+objectRefSize);
+        long trailerNumObjects = parseLong(buffer, trailerOffset + 8, trailerOffset + 16);
+        //System.out.println("numObjects: "+numObjects);
+        long trailerTopObject = parseLong(buffer, trailerOffset + 16, trailerOffset + 24);
+        //System.out.println("topObject: "+topObject);
+        long trailerOffsetTableOffset = parseLong(buffer, trailerOffset + 24, trailerOffset + 32);
+        //System.out.println("offsetTableOffset: "+offsetTableOffset);
+
+        //Every object takes at least one byte, so the values can be checked against the size of the property list
+        if (offsetSize < 1 || offsetSize > 8 || objectRefSize < 1 || objectRefSize > 8
+                || trailerNumObjects < 1 || trailerNumObjects > trailerOffset
+                || trailerTopObject < 0 || trailerTopObject >= trailerNumObjects
+                || trailerOffsetTableOffset < 8 + 1
+                || trailerOffsetTableOffset > trailerOffset - trailerNumObjects * offsetSize) {
+            throw new PropertyListFormatException("The given binary property list has an invalid trailer");
+        }
+        if (trailerNumObjects > limits.getMaxObjects()) {
+            throw new PropertyListFormatException("The given binary property list contains too many objects (" + trailerNumObjects + ", the limit is " + limits.getMaxObjects() + ")");
+        }
+        numObjects = (int) trailerNumObjects;
+        topObject = (int) trailerTopObject;
+        offsetTableOffset = (int) trailerOffsetTableOffset;
+    }
+
+    /**
+     * Gets the ID of the top object of the opened property list.
+     *
+     * @return The object ID.
+     */
+    int getTopObject() {
+        return topObject;
+    }
+
+    /**
+     * Gets the type of an object, i.e. the upper 4 bits of its marker byte.
+     *
+     * @param obj The object ID.
+     * @return The object type, e.g. <code>0xD</code> for dictionaries.
+     * @throws PropertyListFormatException When the object ID is invalid.
+     */
+    int getObjectType(int obj) throws PropertyListFormatException {
+        return (buffer.get(getObjectOffset(obj)) & 0xF0) >> 4;
+    }
+
+    /**
+     * Gets the number of entries of an array, set or dictionary.
+     *
+     * @param obj The object ID of the array, set or dictionary.
+     * @return The number of entries.
+     * @throws PropertyListFormatException When the object ID is invalid.
+     */
+    int getEntryCount(int obj) throws PropertyListFormatException {
+        int offset = getObjectOffset(obj);
+        return readLengthAndOffset(buffer.get(offset) & 0x0F, offset)[0];
+    }
+
+    /**
+     * Gets an object reference stored in an array, set or dictionary.
+     * The references of a dictionary's keys are stored at the indices <code>0</code> to
+     * <code>count - 1</code>, the references of its values at the indices <code>count</code>
+     * to <code>2 * count - 1</code>.
+     *
+     * @param obj   The object ID of the array, set or dictionary.
+     * @param index The index of the reference.
+     * @return The object ID the reference points to.
+     * @throws PropertyListFormatException When the object ID is invalid.
+     */
+    int getEntryRef(int obj, int index) throws PropertyListFormatException {
+        int offset = getObjectOffset(obj);
+        int contentOffset = readLengthAndOffset(buffer.get(offset) & 0x0F, offset)[1];
+        return readObjectRef(offset + contentOffset + index * objectRefSize);
+    }
+
+    /**
+     * Checks whether an object is a string equal to the given one.
+     * ASCII and UTF-16 strings are compared in place without creating a NSString.
+     *
+     * @param obj The object ID.
+     * @param str The string to compare to.
+     * @return Whether the object is a string with the given contents.
+     * @throws PropertyListFormatException When the object ID is invalid.
+     */
+    boolean stringEquals(int obj, String str) throws PropertyListFormatException {
+        int offset = getObjectOffset(obj);
+        int objType = (buffer.get(offset) & 0xF0) >> 4;
+        if (objType == 0x7) {
+            //UTF-8 strings have to be decoded as their length is given in bytes
+            return readString(objType, buffer.get(offset) & 0x0F, offset).equals(str);
+        }
+        if (objType != 0x5 && objType != 0x6) {
+            return false;
+        }
+        int[] lenAndoffset = readLengthAndOffset(buffer.get(offset) & 0x0F, offset);
+        int length = lenAndoffset[0];
+        if (length != str.length()) {
+            return false;
+        }
+        int stroffset = offset + lenAndoffset[1];
+        for (int i = 0; i < length; i++) {
+            char c;
+            if (objType == 0x5) {
+                c = (char) (buffer.get(stroffset + i) & 0xFF);
+            } else {
+                c = buffer.getChar(stroffset + 2 * i);
+            }
+            if (c != str.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the offset of an object from the offset table.
+     *
+     * @param obj The object ID.
+     * @return The offset at which the object is located.
+     * @throws PropertyListFormatException When the object ID is invalid.
+     */
+    private int getObjectOffset(int obj) throws PropertyListFormatException {
+        if (obj < 0 || obj >= numObjects) {
+            throw new PropertyListFormatException("The given binary property list contains an invalid object reference (" + obj + ")");
+        }
+        int offsetTableEntry = offsetTableOffset + obj * offsetSize;
+        long offset = parseUnsignedInt(buffer, offsetTableEntry, offsetTableEntry + offsetSize);
+        //Objects are located between the header and the offset table
+        if (offset < 8 || offset >= offsetTableOffset) {
+            throw new PropertyListFormatException("The given binary property list contains an invalid offset (" + offset + ") for object #" + obj);
+        }
+        return (int) offset;
+    }
+
+    /**
+     * Parses a binary property list from an input stream.
+     *
+     * @param is The input stream that points to the property list's data.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws Exception When an error occurs during parsing.
+     */
+    public static NSObject parse(InputStream is) throws IOException, PropertyListFormatException {
+        return new BinaryPropertyListParser().read(is);
+    }
+
+    /**
+     * Parses a binary property list from an input stream. At most one byte more
+     * than the maximum size given by the limits is read from the stream.
+     *
+     * @param is     The input stream that points to the property list's data.
+     * @param limits The limits the property list has to satisfy.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds one of the limits.
+     */
+    public static NSObject parse(InputStream is, ParseLimits limits) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setLimits(limits);
+        return parser.read(is);
+    }
+
+    /**
+     * Parses a binary property list file.
+     * Larger files are memory-mapped instead of being read onto the heap.
+     *
+     * @param f The binary property list file
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws Exception When an error occurs during parsing.
+     * @see #map(java.io.File)
+     */
+    public static NSObject parse(File f) throws IOException, PropertyListFormatException {
+        return new BinaryPropertyListParser().read(f);
+    }
+
+    /**
+     * Parses a binary property list file. Files larger than allowed by
+     * the given limits are rejected without reading them.
+     *
+     * @param f      The binary property list file
+     * @param limits The limits the property list has to satisfy.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws PropertyListFormatException When the property list is invalid or exceeds one of the limits.
+     * @see #parse(java.nio.ByteBuffer, ParseLimits)
+     */
+    public static NSObject parse(File f, ParseLimits limits) throws IOException, PropertyListFormatException {
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        parser.setLimits(limits);
+        return parser.read(f);
+    }
+
+    /**
+     * Makes the contents of a binary property list file available as a read-only byte buffer.
+     * Files larger than <code>MAPPING_THRESHOLD</code> bytes are memory-mapped,
+     * smaller files are simply read into memory as mapping them is more expensive than reading them.
+     * <p/>
+     * The returned buffer can be shared by several threads which each parse it
+     * using <code>parse(ByteBuffer)</code>.
+     *
+     * @param f The binary property list file.
+     * @return A buffer containing the contents of the file.
+     * @throws IOException When the file cannot be read or is larger than 2 GB.
+     */
+    public static ByteBuffer map(File f) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            long length = raf.length();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("The file " + f + " is too large (" + length + " bytes) to be parsed as a binary property list.");
+            }
+            if (length < MAPPING_THRESHOLD) {
+                byte[] data = new byte[(int) length];
+                raf.readFully(data);
+                return ByteBuffer.wrap(data).asReadOnlyBuffer();
+            }
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Gets an object inside the currently parsed binary property list.
+     * Each object is only parsed once, subsequent references to the same object
+     * return the already parsed instance.
+     * <p/>
+     * Nested containers are parsed with an explicit stack instead of recursion,
+     * so the nesting depth is only restricted by the limits and not by the size
+     * of the thread's stack.
+     *
+     * @param obj The object ID.
+     * @return The parsed object.
+     * @throws PropertyListFormatException When the object ID is invalid or the object references itself.
+     */
+    NSObject parseObject(int obj) throws IOException, PropertyListFormatException {
+        //the innermost container whose entries are being parsed
+        Frame frame = null;
+        while (true) {
+            if (obj < 0 || obj >= numObjects) {
+                throw new PropertyListFormatException("The given binary property list contains an invalid object reference (" + obj + ")");
+            }
+            NSObject result = null;
+            Frame container = null;
+            switch (getParseState(obj)) {
+                case PARSED: {
+                    result = getParsedObject(obj);
+                    break;
+                }
+                case PARSING: {
+                    throw new PropertyListFormatException("The given binary property list contains a cyclic reference to object #" + obj);
+                }
+                default: {
+                    startObject(obj);
+                    int offset = getObjectOffset(obj);
+                    container = openContainer(obj, offset);
+                    if (container == null) {
+                        result = finishObject(obj, readObject(obj, offset));
+                    } else {
+                        enterContainer();
+                        container.parent = frame;
+                        frame = container;
+                        if (isParallel(frame.length)) {
+                            parseEntries(frame.refOffset, frame.entries);
+                            frame.index = frame.length;
+                        }
+                    }
+                }
+            }
+            if (container == null) {
+                if (frame == null) {
+                    return result;
+                }
+                frame.entries[frame.index++] = result;
+            }
+            //complete the containers whose entries have all been parsed
+            while (frame.index == frame.length) {
+                leaveContainer();
+                result = finishObject(frame.obj, completeContainer(frame));
+                frame = frame.parent;
+                if (frame == null) {
+                    return result;
+                }
+                frame.entries[frame.index++] = result;
+            }
+            obj = readObjectRef(frame.refOffset + frame.index * objectRefSize);
+        }
+    }
+
+    /**
+     * Gets the parsing state of an object. In parallel mode, while tasks are parsing
+     * the entries of a container the calling thread waits for them, thus the objects
+     * marked as being parsed in <code>parseStates</code> are the containers on the
+     * calling thread's path. Each task keeps track of the objects on its own path.
+     *
+     * @param obj The object ID.
+     * @return <code>UNPARSED</code>, <code>PARSING</code> or <code>PARSED</code>.
+     */
+    private byte getParseState(int obj) {
+        if (lazy) {
+            Integer id = obj;
+            if (lazyParsedObjects.containsKey(id)) {
+                return PARSED;
+            }
+            return lazyParsingObjects.contains(id) ? PARSING : UNPARSED;
+        }
+        if (executor != null) {
+            if (concurrentObjects.get(obj) != null) {
+                return PARSED;
+            }
+            TaskState task = taskState.get();
+            if (parseStates[obj] == PARSING || (task != null && task.parsingObjects.contains(obj))) {
+                return PARSING;
+            }
+            //null objects are not stored in parallel mode, they are simply parsed again
+            return UNPARSED;
+        }
+        return parseStates[obj];
+    }
+
+    /**
+     * Gets an object that has already been parsed.
+     *
+     * @param obj The object ID.
+     * @return The parsed object.
+     */
+    private NSObject getParsedObject(int obj) {
+        if (lazy) {
+            return lazyParsedObjects.get(obj);
+        }
+        if (executor != null) {
+            return concurrentObjects.get(obj);
+        }
+        return parsedObjects[obj];
+    }
+
+    /**
+     * Marks an object as being parsed.
+     *
+     * @param obj The object ID.
+     */
+    private void startObject(int obj) {
+        if (lazy) {
+            lazyParsingObjects.add(obj);
+        } else if (executor != null) {
+            TaskState task = taskState.get();
+            if (task == null) {
+                parseStates[obj] = PARSING;
+            } else {
+                task.parsingObjects.add(obj);
+            }
+        } else {
+            parseStates[obj] = PARSING;
+        }
+    }
+
+    /**
+     * Stores a parsed object. When two tasks parse the same object at once,
+     * the instance stored first is used.
+     *
+     * @param obj    The object ID.
+     * @param result The parsed object.
+     * @return The instance to be used for the object.
+     */
+    private NSObject finishObject(int obj, NSObject result) {
+        if (lazy) {
+            lazyParsingObjects.remove(obj);
+            lazyParsedObjects.put(obj, result);
+        } else if (executor != null) {
+            TaskState task = taskState.get();
+            if (task == null) {
+                parseStates[obj] = PARSED;
+            } else {
+                task.parsingObjects.remove(obj);
+            }
+            if (result != null && !concurrentObjects.compareAndSet(obj, null, result)) {
+                result = concurrentObjects.get(obj);
+            }
+        } else {
+            parsedObjects[obj] = result;
+            parseStates[obj] = PARSED;
+        }
+        return result;
+    }
+
+    /**
+     * Creates the stack frame for parsing the entries of an array, set or dictionary.
+     *
+     * @param obj    The object ID.
+     * @param offset The offset of the object.
+     * @return The stack frame, or <code>null</code> if the object has no entries to be parsed.
+     * @throws PropertyListFormatException When the length of the container is invalid.
+     */
+    private Frame openContainer(int obj, int offset) throws PropertyListFormatException {
+        byte type = buffer.get(offset);
+        int objType = (type & 0xF0) >> 4; //First  4 bits
+        int objInfo = (type & 0x0F);      //Second 4 bits
+        if (objType < 0xA || objType > 0xD || (objType == 0xA && lazy)) {
+            return null;
+        }
+        int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
+        int length = lenAndoffset[0];
+        int refOffset = offset + lenAndoffset[1];
+        switch (objType) {
+            case 0xA: {
+                //Array
+                NSArray array = new NSArray(length);
+                //arrays of v1.0 property lists may contain null values, which cannot be set through setValue
+                return new Frame(obj, objType, refOffset, array, array.getArray());
+            }
+            case 0xB: {
+                //Ordered set
+                return new Frame(obj, objType, refOffset, new NSSet(true), new NSObject[length]);
+            }
+            case 0xC: {
+                //Set
+                return new Frame(obj, objType, refOffset, new NSSet(), new NSObject[length]);
+            }
+            default: {
+                //Dictionary, the key references are followed by the value references
+                //In lazy mode only the keys are parsed
+                return new Frame(obj, objType, refOffset, new NSDictionary(), new NSObject[lazy ? length : 2 * length]);
+            }
+        }
+    }
+
+    /**
+     * Fills an array, set or dictionary with its parsed entries.
+     *
+     * @param frame The stack frame of the container.
+     * @return The container.
+     */
+    private NSObject completeContainer(Frame frame) {
+        switch (frame.objType) {
+            case 0xA: {
+                //the entries have been stored in the array itself
+                return frame.container;
+            }
+            case 0xB:
+            case 0xC: {
+                NSSet set = (NSSet) frame.container;
+                for (NSObject value : frame.entries) {
+                    set.addObject(value);
+                }
+                return set;
+            }
+            default: {
+                NSDictionary dict = (NSDictionary) frame.container;
+                if (lazy) {
+                    for (int i = 0; i < frame.length; i++) {
+                        dict.putUnresolved(toKey(frame.entries[i]), readObjectRef(frame.refOffset + (frame.length + i) * objectRefSize), this);
+                    }
+                } else {
+                    int length = frame.length / 2;
+                    for (int i = 0; i < length; i++) {
+                        dict.put(toKey(frame.entries[i]), frame.entries[length + i]);
+                    }
+                }
+                return dict;
+            }
+        }
+    }
+
+    /**
+     * Parses the objects referenced by a large array, set or dictionary in parallel.
+     * The references are split into chunks that are parsed by tasks of the executor.
+     *
+     * @param refOffset The offset of the first reference.
+     * @param dest      The array receiving the parsed objects, its length is the number of references.
+     * @throws PropertyListFormatException When an error occurs during parsing.
+     */
+    private void parseEntries(int refOffset, NSObject[] dest) throws IOException, PropertyListFormatException {
+        int chunkSize = Math.max(PARALLEL_THRESHOLD / 4, dest.length / (4 * Runtime.getRuntime().availableProcessors()));
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        try {
+            for (int start = 0; start < dest.length; start += chunkSize) {
+                futures.add(executor.submit(new ParseTask(refOffset, dest, start, Math.min(start + chunkSize, dest.length), depth)));
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Parsing the binary property list was interrupted");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof PropertyListFormatException) {
+                throw (PropertyListFormatException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            } else {
+                throw new RuntimeException(cause);
+            }
+        } finally {
+            for (Future<Object> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the entries of a container are parsed in parallel.
+     *
+     * @param length The number of entries of the container.
+     * @return Whether the entries are parsed in parallel.
+     */
+    private boolean isParallel(int length) {
+        return executor != null && length >= PARALLEL_THRESHOLD && taskState.get() == null;
+    }
+
+    /**
+     * The state of a task parsing a chunk of a container's entries.
+     */
+    private static class TaskState {
+        /**
+         * The objects that are being parsed by the task *
+         */
+        HashSet<Integer> parsingObjects = new HashSet<Integer>();
+        /**
+         * The number of containers that are currently parsed, including those being parsed by the calling thread *
+         */
+        int depth;
+
+        TaskState(int depth) {
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * Parses a chunk of the objects referenced by an array, set or dictionary.
+     */
+    private class ParseTask implements Callable<Object> {
+        private int refOffset;
+        private NSObject[] dest;
+        private int start, end;
+        private int depth;
+
+        ParseTask(int refOffset, NSObject[] dest, int start, int end, int depth) {
+            this.refOffset = refOffset;
+            this.dest = dest;
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+        }
+
+        public Object call() throws Exception {
+            taskState.set(new TaskState(depth));
+            try {
+                for (int i = start; i < end; i++) {
+                    dest[i] = parseObject(readObjectRef(refOffset + i * objectRefSize));
+                }
+            } finally {
+                taskState.remove();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * An array, set or dictionary whose entries are being parsed.
+     */
+    private static class Frame {
+        /**
+         * The object ID of the container *
+         */
+        final int obj;
+        /**
+         * The type of the container *
+         */
+        final int objType;
+        /**
+         * The offset of the first reference to an entry *
+         */
+        final int refOffset;
+        /**
+         * The container object *
+         */
+        final NSObject container;
+        /**
+         * The parsed entries, for dictionaries the keys are followed by the values *
+         */
+        final NSObject[] entries;
+        /**
+         * The number of entries to be parsed *
+         */
+        final int length;
+        /**
+         * The index of the next entry to be parsed *
+         */
+        int index;
+        /**
+         * The container containing this container *
+         */
+        Frame parent;
+
+        Frame(int obj, int objType, int refOffset, NSObject container, NSObject[] entries) {
+            this.obj = obj;
+            this.objType = objType;
+            this.refOffset = refOffset;
+            this.container = container;
+            this.entries = entries;
+            this.length = entries.length;
+        }
+    }
+
+    /**
+     * Gets an object of a lazily parsed property list when it is accessed by
+     * the NSDictionary or NSArray containing it.
+     *
+     * @param obj The object ID.
+     * @return The parsed object.
+     * @throws RuntimeException When an error occurs during parsing.
+     */
+    synchronized NSObject parseLazyObject(int obj) {
+        try {
+            return parseOpenedObject(obj);
+        } catch (PropertyListFormatException ex) {
+            throw new RuntimeException("Object #" + obj + " of the binary property list could not be parsed: " + ex.getMessage(), ex);
+        } catch (IOException ex) {
+            throw new RuntimeException("Object #" + obj + " of the binary property list could not be parsed: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Parses an object of a property list opened in lazy mode. If parsing fails for
+     * any reason, the objects that were being parsed are reset, so that the failed
+     * object and its containers can be accessed again without being reported as cyclic.
+     *
+     * @param obj The object ID.
+     * @return The parsed object.
+     * @throws IOException When an error occurs during parsing.
+     * @throws PropertyListFormatException When an error occurs during parsing.
      */
-    public static NSObject parse(File f) throws IOException, PropertyListFormatException {
-        if (f.length() > Runtime.getRuntime().freeMemory()) {
-            throw new OutOfMemoryError("To little heap space available! Wanted to read " + f.length() + " bytes, but only " + Runtime.getRuntime().freeMemory() + " are available.");
+    synchronized NSObject parseOpenedObject(int obj) throws IOException, PropertyListFormatException {
+        boolean parsed = false;
+        try {
+            NSObject result = parseObject(obj);
+            parsed = true;
+            return result;
+        } finally {
+            if (!parsed) {
+                lazyParsingObjects.clear();
+                depth = 0;
+            }
         }
-        return parse(new FileInputStream(f));
     }
 
     /**
@@ -187,13 +1619,13 @@ public class BinaryPropertyListParser {
      * <a href="http://www.opensource.apple.com/source/CF/CF-744/CFBinaryPList.c">
      * Apple's binary property list parser implementation</a>.
      *
-     * @param obj The object ID.
+     * @param obj    The object ID.
+     * @param offset The offset of the object.
      * @return The parsed object.
      * @throws java.lang.Exception When an error occurs during parsing.
      */
-    private NSObject parseObject(int obj) throws IOException, PropertyListFormatException {
-        int offset = offsetTable[obj];
-        byte type = bytes[offset];
+    private NSObject readObject(int obj, int offset) throws IOException, PropertyListFormatException {
+        byte type = buffer.get(offset);
         int objType = (type & 0xF0) >> 4; //First  4 bits
         int objInfo = (type & 0x0F);      //Second 4 bits
         switch (objType) {
@@ -212,20 +1644,15 @@ public class BinaryPropertyListParser {
                         //true
                         return new NSNumber(true);
                     }
-                    case 0xC: {
-                        //URL with no base URL (v1.0 and later)
-                        //TODO
-                        break;
-                    }
+                    case 0xC:
                     case 0xD: {
-                        //URL with base URL (v1.0 and later)
-                        //TODO
-                        break;
+                        //URL with no base URL or URL with base URL (v1.0 and later)
+                        return new NSString(readURL(offset, new int[1]));
                     }
                     case 0xE: {
                         //16-byte UUID (v1.0 and later)
-                        //TODO
-                        break;
+                        checkRange(offset, offset + 17);
+                        return new NSData(readBytes(offset + 1, offset + 17));
                     }
                     case 0xF: {
                         //filler byte
@@ -236,28 +1663,23 @@ public class BinaryPropertyListParser {
             }
             case 0x1: {
                 //integer
-                int length = (int) Math.pow(2, objInfo);
-                if (length < Runtime.getRuntime().freeMemory()) {
-                    return new NSNumber(copyOfRange(bytes, offset + 1, offset + 1 + length), NSNumber.INTEGER);
-                } else {
-                    throw new OutOfMemoryError("To little heap space available! Wanted to read " + length + " bytes, but only " + Runtime.getRuntime().freeMemory() + " are available.");
-                }
+                int length = 1 << objInfo;
+                checkRange(offset, offset + 1 + length);
+                return new NSNumber(buffer, offset + 1, offset + 1 + length, NSNumber.INTEGER);
             }
             case 0x2: {
                 //real
-                int length = (int) Math.pow(2, objInfo);
-                if (length < Runtime.getRuntime().freeMemory()) {
-                    return new NSNumber(copyOfRange(bytes, offset + 1, offset + 1 + length), NSNumber.REAL);
-                } else {
-                    throw new OutOfMemoryError("To little heap space available! Wanted to read " + length + " bytes, but only " + Runtime.getRuntime().freeMemory() + " are available.");
-                }
+                int length = 1 << objInfo;
+                checkRange(offset, offset + 1 + length);
+                return new NSNumber(buffer, offset + 1, offset + 1 + length, NSNumber.REAL);
             }
             case 0x3: {
                 //Date
                 if (objInfo != 0x3) {
                     throw new PropertyListFormatException("The given binary property list contains a date object of an unknown type ("+objInfo+")");
                 }
-                return new NSDate(copyOfRange(bytes, offset + 1, offset + 9));
+                checkRange(offset, offset + 9);
+                return new NSDate(buffer, offset + 1, offset + 9);
             }
             case 0x4: {
                 //Data
@@ -265,159 +1687,523 @@ public class BinaryPropertyListParser {
                 int length = lenAndoffset[0];
                 int dataoffset = lenAndoffset[1];
 
-                if (length < Runtime.getRuntime().freeMemory()) {
-                    return new NSData(copyOfRange(bytes, offset + dataoffset, offset + dataoffset + length));
-                } else {
-                    throw new OutOfMemoryError("To little heap space available! Wanted to read " + length + " bytes, but only " + Runtime.getRuntime().freeMemory() + " are available.");
-                }
-            }
-            case 0x5: {
-                //ASCII String
-                int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
-                int length = lenAndoffset[0];
-                int stroffset = lenAndoffset[1];
-
-                if (length < Runtime.getRuntime().freeMemory()) {
-                    return new NSString(copyOfRange(bytes, offset + stroffset, offset + stroffset + length), "ASCII");
-                } else {
-                    throw new OutOfMemoryError("To little heap space available! Wanted to read " + length + " bytes, but only " + Runtime.getRuntime().freeMemory() + " are available.");
+                if (copyData || length < DATA_VIEW_THRESHOLD) {
+                    return new NSData(readBytes(offset + dataoffset, offset + dataoffset + length));
                 }
+                return new NSData(readOnlyView(offset + dataoffset, offset + dataoffset + length));
             }
-            case 0x6: {
-                //UTF-16-BE String
-                int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
-                int length = lenAndoffset[0];
-                int stroffset = lenAndoffset[1];
-
-                //length is String length -> to get byte length multiply by 2, as 1 character takes 2 bytes in UTF-16
-                length *= 2;
-                if (length < Runtime.getRuntime().freeMemory()) {
-                    return new NSString(copyOfRange(bytes, offset + stroffset, offset + stroffset + length), "UTF-16BE");
-                } else {
-                    throw new OutOfMemoryError("To little heap space available! Wanted to read " + length + " bytes, but only " + Runtime.getRuntime().freeMemory() + " are available.");
+            case 0x5:
+            case 0x6:
+            case 0x7: {
+                //ASCII, UTF-16-BE or UTF-8 String (v1.0 and later)
+                String str = readString(objType, objInfo, offset);
+                if (stringPool != null && objType == 0x5) {
+                    str = stringPool.internValue(str);
                 }
+                return new NSString(str);
             }
             case 0x8: {
                 //UID
                 int length = objInfo + 1;
-                if (length < Runtime.getRuntime().freeMemory()) {
-                    return new UID(String.valueOf(obj), copyOfRange(bytes, offset + 1, offset + 1 + length));
-                } else {
-                    throw new OutOfMemoryError("To little heap space available! Wanted to read " + length + " bytes, but only " + Runtime.getRuntime().freeMemory() + " are available.");
-                }
+                checkRange(offset, offset + 1 + length);
+                return new UID(String.valueOf(obj), readBytes(offset + 1, offset + 1 + length));
             }
             case 0xA: {
-                //Array
+                //Array in lazy mode, other containers are parsed by parseObject
                 int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
                 int length = lenAndoffset[0];
                 int arrayoffset = lenAndoffset[1];
 
-                if (length * objectRefSize > Runtime.getRuntime().freeMemory()) {
-                    throw new OutOfMemoryError("To little heap space available!");
-                }
                 NSArray array = new NSArray(length);
+                int[] objRefs = new int[length];
                 for (int i = 0; i < length; i++) {
-                    int objRef = (int) parseUnsignedInt(copyOfRange(bytes,
-                            offset + arrayoffset + i * objectRefSize,
-                            offset + arrayoffset + (i + 1) * objectRefSize));
-                    array.setValue(i, parseObject(objRef));
+                    objRefs[i] = readObjectRef(offset + arrayoffset + i * objectRefSize);
                 }
+                array.setUnresolvedValues(this, objRefs);
                 return array;
+            }
+            default: {
+                System.err.println("WARNING: The given binary property list contains an object of unknown type (" + objType + ")");
+            }
+        }
+        return null;
+    }
 
+    /**
+     * Gets the string used as dictionary key for a parsed key object.
+     *
+     * @param key The key object.
+     * @return The key string, taken from the string pool if there is one.
+     */
+    private String toKey(NSObject key) {
+        String str = key.toString();
+        return stringPool != null ? stringPool.intern(str) : str;
+    }
+
+    /**
+     * Reports an object and all objects contained in it to a handler.
+     * Nested containers are tracked in <code>containerStack</code> instead of
+     * being visited recursively.
+     *
+     * @param obj     The object ID.
+     * @param handler The handler.
+     * @throws PropertyListFormatException When an object is invalid or references itself.
+     */
+    private void visitObjects(int obj, PropertyListHandler handler) throws IOException, PropertyListFormatException {
+        while (true) {
+            visitObject(obj, handler);
+            //find the next object to report, ending the containers whose entries have all been reported
+            boolean next = false;
+            while (!next && handlerDepth > 0) {
+                int frame = (handlerDepth - 1) * CONTAINER_FRAME_SIZE;
+                int objType = containerStack[frame + 1];
+                int refOffset = containerStack[frame + 2];
+                int length = containerStack[frame + 3];
+                int i = containerStack[frame + 4]++;
+                if (i < length) {
+                    if (objType == 0xD) {
+                        visitKey(readObjectRef(refOffset + i * objectRefSize), handler);
+                        obj = readObjectRef(refOffset + (length + i) * objectRefSize);
+                    } else {
+                        obj = readObjectRef(refOffset + i * objectRefSize);
+                    }
+                    next = true;
+                } else {
+                    if (objType == 0xA) {
+                        handler.endArray();
+                    } else if (objType == 0xD) {
+                        handler.endDictionary();
+                    } else {
+                        handler.endSet();
+                    }
+                    handlerContainers.clear(containerStack[frame]);
+                    handlerDepth--;
+                }
             }
-            case 0xB: {
-                //Ordered set
-                int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
-                int length = lenAndoffset[0];
-                int contentOffset = lenAndoffset[1];
+            if (!next) {
+                return;
+            }
+        }
+    }
 
-                if (length * objectRefSize > Runtime.getRuntime().freeMemory()) {
-                    throw new OutOfMemoryError("To little heap space available!");
+    /**
+     * Reports an object inside the currently parsed binary property list to a handler.
+     * For containers only the start is reported, their entries are reported by <code>visitObjects</code>.
+     *
+     * @param obj     The object ID.
+     * @param handler The handler.
+     * @throws PropertyListFormatException When the object is invalid or references itself.
+     */
+    private void visitObject(int obj, PropertyListHandler handler) throws IOException, PropertyListFormatException {
+        int offset = getObjectOffset(obj);
+        byte type = buffer.get(offset);
+        int objType = (type & 0xF0) >> 4; //First  4 bits
+        int objInfo = (type & 0x0F);      //Second 4 bits
+        switch (objType) {
+            case 0x0: {
+                //Simple
+                if (objInfo == 0x8 || objInfo == 0x9) {
+                    handler.bool(objInfo == 0x9);
+                } else if (objInfo == 0xC || objInfo == 0xD) {
+                    handler.string(readURL(offset, new int[1]));
+                } else if (objInfo == 0xE) {
+                    checkRange(offset, offset + 17);
+                    handler.data(readOnlyView(offset + 1, offset + 17));
+                } else {
+                    handler.nullValue();
                 }
-                NSSet set = new NSSet(true);
-                for (int i = 0; i < length; i++) {
-                    int objRef = (int) parseUnsignedInt(copyOfRange(bytes,
-                            offset + contentOffset + i * objectRefSize,
-                            offset + contentOffset + (i + 1) * objectRefSize));
-                    set.addObject(parseObject(objRef));
+                break;
+            }
+            case 0x1: {
+                //integer
+                checkRange(offset, offset + 1 + (1 << objInfo));
+                handler.integer(parseLong(buffer, offset + 1, offset + 1 + (1 << objInfo)));
+                break;
+            }
+            case 0x2: {
+                //real
+                checkRange(offset, offset + 1 + (1 << objInfo));
+                handler.real(parseDouble(buffer, offset + 1, offset + 1 + (1 << objInfo)));
+                break;
+            }
+            case 0x3: {
+                //Date
+                if (objInfo != 0x3) {
+                    throw new PropertyListFormatException("The given binary property list contains a date object of an unknown type ("+objInfo+")");
                 }
-                return set;
+                checkRange(offset, offset + 9);
+                handler.date(NSDate.parseBinaryDate(buffer, offset + 1, offset + 9));
+                break;
+            }
+            case 0x4: {
+                //Data
+                int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
+                handler.data(readOnlyView(offset + lenAndoffset[1], offset + lenAndoffset[1] + lenAndoffset[0]));
+                break;
+            }
+            case 0x5:
+            case 0x6:
+            case 0x7: {
+                //ASCII, UTF-16-BE or UTF-8 String
+                handler.string(readString(objType, objInfo, offset));
+                break;
+            }
+            case 0x8: {
+                //UID
+                checkRange(offset, offset + 2 + objInfo);
+                handler.uid(readBytes(offset + 1, offset + 2 + objInfo));
+                break;
             }
+            case 0xA:
+            case 0xB:
             case 0xC: {
-                //Set
+                //Array or set
                 int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
                 int length = lenAndoffset[0];
-                int contentOffset = lenAndoffset[1];
-
-                if (length * objectRefSize > Runtime.getRuntime().freeMemory()) {
-                    throw new OutOfMemoryError("To little heap space available!");
-                }
-                NSSet set = new NSSet();
-                for (int i = 0; i < length; i++) {
-                    int objRef = (int) parseUnsignedInt(copyOfRange(bytes,
-                            offset + contentOffset + i * objectRefSize,
-                            offset + contentOffset + (i + 1) * objectRefSize));
-                    set.addObject(parseObject(objRef));
+                enterContainer(obj, objType, offset + lenAndoffset[1], length);
+                if (objType == 0xA) {
+                    handler.startArray(length);
+                } else {
+                    handler.startSet(length, objType == 0xB);
                 }
-                return set;
+                break;
             }
             case 0xD: {
                 //Dictionary
                 int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
                 int length = lenAndoffset[0];
-                int contentOffset = lenAndoffset[1];
+                enterContainer(obj, objType, offset + lenAndoffset[1], length);
+                handler.startDictionary(length);
+                break;
+            }
+            default: {
+                throw new PropertyListFormatException("The given binary property list contains an object of unknown type (" + objType + ")");
+            }
+        }
+    }
+
+    /**
+     * Reports a dictionary key to a handler.
+     *
+     * @param keyRef  The object ID of the key.
+     * @param handler The handler.
+     * @throws PropertyListFormatException When the key is no string.
+     */
+    private void visitKey(int keyRef, PropertyListHandler handler) throws PropertyListFormatException {
+        int keyOffset = getObjectOffset(keyRef);
+        int keyType = (buffer.get(keyOffset) & 0xF0) >> 4;
+        if (keyType != 0x5 && keyType != 0x6 && keyType != 0x7) {
+            throw new PropertyListFormatException("The given binary property list contains a dictionary key that is no string (object #" + keyRef + ")");
+        }
+        handler.key(readString(keyType, buffer.get(keyOffset) & 0x0F, keyOffset));
+    }
+
+    /**
+     * Marks a container as being reported to a handler.
+     *
+     * @param obj       The object ID of the container.
+     * @param objType   The type of the container.
+     * @param refOffset The offset of the first reference to an entry.
+     * @param length    The number of entries.
+     * @throws PropertyListFormatException When the container is already being reported, i.e. it contains itself.
+     */
+    private void enterContainer(int obj, int objType, int refOffset, int length) throws PropertyListFormatException {
+        checkDepth(handlerDepth + 1);
+        if (handlerContainers.get(obj)) {
+            throw new PropertyListFormatException("The given binary property list contains a cyclic reference to object #" + obj);
+        }
+        pushContainer(handlerDepth, obj, objType, refOffset, length);
+        handlerContainers.set(obj);
+        handlerDepth++;
+    }
+
+    /**
+     * Stores a container in <code>containerStack</code>.
+     *
+     * @param depth     The number of containers already on the stack.
+     * @param obj       The object ID of the container.
+     * @param objType   The type of the container.
+     * @param refOffset The offset of the first reference to an entry.
+     * @param length    The number of entries.
+     */
+    private void pushContainer(int depth, int obj, int objType, int refOffset, int length) {
+        int frame = depth * CONTAINER_FRAME_SIZE;
+        if (frame == containerStack.length) {
+            int[] newStack = new int[containerStack.length * 2];
+            System.arraycopy(containerStack, 0, newStack, 0, frame);
+            containerStack = newStack;
+        }
+        containerStack[frame] = obj;
+        containerStack[frame + 1] = objType;
+        containerStack[frame + 2] = refOffset;
+        containerStack[frame + 3] = length;
+        containerStack[frame + 4] = 0;
+    }
+
+    /**
+     * Marks the start of parsing a container.
+     *
+     * @throws PropertyListFormatException When the maximum nesting depth is exceeded.
+     */
+    private void enterContainer() throws PropertyListFormatException {
+        TaskState task = taskState == null ? null : taskState.get();
+        if (task != null) {
+            checkDepth(++task.depth);
+        } else {
+            checkDepth(++depth);
+        }
+    }
+
+    /**
+     * Marks the end of parsing a container.
+     */
+    private void leaveContainer() {
+        TaskState task = taskState == null ? null : taskState.get();
+        if (task != null) {
+            task.depth--;
+        } else {
+            depth--;
+        }
+    }
+
+    /**
+     * Checks the nesting depth of a container against the limits.
+     *
+     * @param depth The nesting depth of the container.
+     * @throws PropertyListFormatException When the maximum nesting depth is exceeded.
+     */
+    private void checkDepth(int depth) throws PropertyListFormatException {
+        if (depth > limits.getMaxDepth()) {
+            throw new PropertyListFormatException("The given binary property list is nested too deeply (the limit is " + limits.getMaxDepth() + ")");
+        }
+    }
+
+    /**
+     * Checks that an object lies within the object area of the property list,
+     * i.e. between the header and the offset table.
+     *
+     * @param offset    Offset at which the object is located.
+     * @param endOffset Offset after the last byte of the object.
+     * @throws PropertyListFormatException When the object exceeds the object area.
+     */
+    private void checkRange(int offset, long endOffset) throws PropertyListFormatException {
+        if (endOffset > offsetTableOffset) {
+            throw new PropertyListFormatException("The given binary property list contains an object at offset " + offset + " that exceeds the object area");
+        }
+    }
 
-                if (length * 2 * objectRefSize > Runtime.getRuntime().freeMemory()) {
-                    throw new OutOfMemoryError("To little heap space available!");
+    /**
+     * Reads an ASCII, UTF-16-BE or UTF-8 string.
+     *
+     * @param objType The object type, <code>0x5</code> for ASCII, <code>0x6</code> for UTF-16-BE
+     *                or <code>0x7</code> for UTF-8 strings.
+     * @param objInfo Object information byte.
+     * @param offset  Offset in the byte array at which the string object is located.
+     * @return The string.
+     */
+    private String readString(int objType, int objInfo, int offset) throws PropertyListFormatException {
+        int[] lenAndoffset = readLengthAndOffset(objInfo, offset);
+        int length = lenAndoffset[0];
+        int start = offset + lenAndoffset[1];
+        if (objType == 0x7) {
+            //length is the number of bytes
+            return UTF_8.decode(readOnlyView(start, start + length)).toString();
+        }
+        //ASCII and UTF-16-BE strings are decoded directly, length is the number of characters
+        char[] chars = new char[length];
+        if (buffer.hasArray()) {
+            byte[] bytes = buffer.array();
+            int index = buffer.arrayOffset() + start;
+            if (objType == 0x5) {
+                for (int i = 0; i < length; i++) {
+                    byte b = bytes[index + i];
+                    //non-ASCII bytes are replaced like the ASCII charset does
+                    chars[i] = b >= 0 ? (char) b : '\uFFFD';
                 }
-                //System.out.println("Parsing dictionary #"+obj);
-                NSDictionary dict = new NSDictionary();
+            } else {
                 for (int i = 0; i < length; i++) {
-                    int keyRef = (int) parseUnsignedInt(copyOfRange(bytes,
-                            offset + contentOffset + i * objectRefSize,
-                            offset + contentOffset + (i + 1) * objectRefSize));
-                    int valRef = (int) parseUnsignedInt(copyOfRange(bytes,
-                            offset + contentOffset + (length * objectRefSize) + i * objectRefSize,
-                            offset + contentOffset + (length * objectRefSize) + (i + 1) * objectRefSize));
-                    NSObject key = parseObject(keyRef);
-                    NSObject val = parseObject(valRef);
-                    dict.put(key.toString(), val);
+                    chars[i] = (char) (((bytes[index] & 0xFF) << 8) | (bytes[index + 1] & 0xFF));
+                    index += 2;
                 }
-                return dict;
             }
-            default: {
-                System.err.println("WARNING: The given binary property list contains an object of unknown type (" + objType + ")");
+        } else {
+            if (objType == 0x5) {
+                for (int i = 0; i < length; i++) {
+                    byte b = buffer.get(start + i);
+                    chars[i] = b >= 0 ? (char) b : '\uFFFD';
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    chars[i] = buffer.getChar(start + 2 * i);
+                }
             }
         }
-        return null;
+        return new String(chars);
+    }
+
+    /**
+     * Reads a URL (v1.0 and later). Unlike other objects the URL string and
+     * the base URL are not referenced but stored directly after the URL marker.
+     * A URL with a base URL is resolved against its base.
+     *
+     * @param offset    Offset in the byte array at which the URL object is located.
+     * @param endOffset An array of length one, receives the offset after the last byte of the URL object.
+     * @return The URL string.
+     * @throws PropertyListFormatException When the URL is not stored as a string.
+     */
+    private String readURL(int offset, int[] endOffset) throws IOException, PropertyListFormatException {
+        String base = null;
+        int stringOffset = offset + 1;
+        if ((buffer.get(offset) & 0x0F) == 0xD) {
+            checkRange(offset, offset + 2);
+            int baseType = buffer.get(stringOffset) & 0xFF;
+            if (baseType != 0x0C && baseType != 0x0D) {
+                throw new PropertyListFormatException("The given binary property list contains a URL at offset " + offset + " with an invalid base URL");
+            }
+            base = readURL(stringOffset, endOffset);
+            stringOffset = endOffset[0];
+        }
+        checkRange(offset, stringOffset + 1);
+        int type = buffer.get(stringOffset);
+        int objType = (type & 0xF0) >> 4;
+        int objInfo = type & 0x0F;
+        if (objType != 0x5 && objType != 0x6 && objType != 0x7) {
+            throw new PropertyListFormatException("The given binary property list contains a URL at offset " + offset + " that is no string");
+        }
+        int[] lenAndoffset = readLengthAndOffset(objInfo, stringOffset);
+        endOffset[0] = stringOffset + lenAndoffset[1] + (objType == 0x6 ? 2 * lenAndoffset[0] : lenAndoffset[0]);
+        String url = readString(objType, objInfo, stringOffset);
+        if (base == null) {
+            return url;
+        }
+        try {
+            return new URI(base).resolve(url).toString();
+        } catch (URISyntaxException ex) {
+            return base + url;
+        } catch (IllegalArgumentException ex) {
+            return base + url;
+        }
+    }
+
+    /**
+     * Creates a read-only view of a part of the property list.
+     *
+     * @param startIndex The index of the first byte.
+     * @param endIndex   The index after the last byte.
+     * @return A read-only buffer whose position and limit are the given indices.
+     */
+    private ByteBuffer readOnlyView(int startIndex, int endIndex) {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.clear();
+        view.position(startIndex);
+        view.limit(endIndex);
+        return view;
     }
 
     /**
-     * Reads the length for arrays, sets and dictionaries.
+     * Reads the length for data, strings, arrays, sets and dictionaries.
+     * The length is checked against the limits and it is ensured that the
+     * content of the object lies within the object area of the property list.
      *
      * @param objInfo Object information byte.
      * @param offset  Offset in the byte array at which the object is located.
      * @return An array with the length two. First entry is the length, second entry the offset at which the content starts.
+     * @throws PropertyListFormatException When the length is invalid or exceeds the limits.
      */
-    private int[] readLengthAndOffset(int objInfo, int offset) {
-        int length = objInfo;
+    private int[] readLengthAndOffset(int objInfo, int offset) throws PropertyListFormatException {
+        long length = objInfo;
         int stroffset = 1;
         if (objInfo == 0xF) {
-            int int_type = bytes[offset + 1];
+            checkRange(offset, offset + 2);
+            int int_type = buffer.get(offset + 1);
             int intType = (int_type & 0xF0) >> 4;
             if (intType != 0x1) {
+                if (validating) {
+                    throw new PropertyListFormatException("The given binary property list contains an object at offset " + offset + " whose length is no integer (type " + intType + ")");
+                }
                 System.err.println("BinaryPropertyListParser: Length integer has an unexpected type" + intType + ". Attempting to parse anyway...");
             }
             int intInfo = int_type & 0x0F;
-            int intLength = (int) Math.pow(2, intInfo);
+            if (intInfo > 3) {
+                throw new PropertyListFormatException("The given binary property list contains an object at offset " + offset + " with an invalid length");
+            }
+            int intLength = 1 << intInfo;
             stroffset = 2 + intLength;
-            if (intLength < 3) {
-                length = (int) parseUnsignedInt(copyOfRange(bytes, offset + 2, offset + 2 + intLength));
-            } else {
-                length = new BigInteger(copyOfRange(bytes, offset + 2, offset + 2 + intLength)).intValue();
+            checkRange(offset, offset + stroffset);
+            length = parseLong(buffer, offset + 2, offset + 2 + intLength);
+            if (length < 0 || length > Integer.MAX_VALUE) {
+                throw new PropertyListFormatException("The given binary property list contains an object at offset " + offset + " with an invalid length (" + length + ")");
+            }
+        }
+        long contentLength;
+        switch ((buffer.get(offset) & 0xF0) >> 4) {
+            case 0x5:
+            case 0x7: {
+                if (length > limits.getMaxStringLength()) {
+                    throw new PropertyListFormatException("The given binary property list contains a string that is too long (" + length + " characters, the limit is " + limits.getMaxStringLength() + ")");
+                }
+                contentLength = length;
+                break;
+            }
+            case 0x6: {
+                if (length > limits.getMaxStringLength()) {
+                    throw new PropertyListFormatException("The given binary property list contains a string that is too long (" + length + " characters, the limit is " + limits.getMaxStringLength() + ")");
+                }
+                contentLength = 2 * length;
+                break;
+            }
+            case 0xA:
+            case 0xB:
+            case 0xC: {
+                if (length > limits.getMaxContainerSize()) {
+                    throw new PropertyListFormatException("The given binary property list contains a container that is too large (" + length + " entries, the limit is " + limits.getMaxContainerSize() + ")");
+                }
+                contentLength = length * objectRefSize;
+                break;
+            }
+            case 0xD: {
+                if (length > limits.getMaxContainerSize()) {
+                    throw new PropertyListFormatException("The given binary property list contains a container that is too large (" + length + " entries, the limit is " + limits.getMaxContainerSize() + ")");
+                }
+                contentLength = 2 * length * objectRefSize;
+                break;
+            }
+            default: {
+                contentLength = length;
             }
         }
-        return new int[]{length, stroffset};
+        checkRange(offset, offset + stroffset + contentLength);
+        return new int[]{(int) length, stroffset};
+    }
+
+    /**
+     * Reads an object reference.
+     *
+     * @param offset Offset in the byte array at which the reference is located.
+     * @return The object ID the reference points to.
+     */
+    private int readObjectRef(int offset) {
+        return (int) parseUnsignedInt(buffer, offset, offset + objectRefSize);
+    }
+
+    /**
+     * Copies a part of the property list into a new array.
+     *
+     * @param startIndex The index from which to start copying.
+     * @param endIndex   The index until which to copy.
+     * @return The copied bytes.
+     */
+    private byte[] readBytes(int startIndex, int endIndex) {
+        byte[] dest = new byte[endIndex - startIndex];
+        if (buffer.hasArray()) {
+            System.arraycopy(buffer.array(), buffer.arrayOffset() + startIndex, dest, 0, dest.length);
+        } else {
+            //the buffer is not modified, so that several threads can read from it at once
+            ByteBuffer src = buffer.duplicate();
+            src.position(startIndex);
+            src.get(dest);
+        }
+        return dest;
     }
 
     /**
@@ -427,15 +2213,40 @@ public class BinaryPropertyListParser {
      * @return The unsigned integer represented by the given bytes.
      */
     public static final long parseUnsignedInt(byte[] bytes) {
+        return parseUnsignedInt(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses an unsigned integer from a part of a byte array.
+     *
+     * @param bytes      The byte array containing the unsigned integer.
+     * @param startIndex The index of the first byte of the unsigned integer.
+     * @param endIndex   The index after the last byte of the unsigned integer.
+     * @return The unsigned integer represented by the given bytes.
+     */
+    public static final long parseUnsignedInt(byte[] bytes, int startIndex, int endIndex) {
         long l = 0;
-        for (byte b : bytes) {
+        for (int i = startIndex; i < endIndex; i++) {
             l <<= 8;
-            l |= b & 0xFF;
+            l |= bytes[i] & 0xFF;
         }
         l &= 0xFFFFFFFFL;
         return l;
     }
 
+    /**
+     * Parses an unsigned integer from a part of a byte buffer.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer     The byte buffer containing the unsigned integer.
+     * @param startIndex The index of the first byte of the unsigned integer.
+     * @param endIndex   The index after the last byte of the unsigned integer.
+     * @return The unsigned integer represented by the given bytes.
+     */
+    public static final long parseUnsignedInt(ByteBuffer buffer, int startIndex, int endIndex) {
+        return parseLong(buffer, startIndex, endIndex) & 0xFFFFFFFFL;
+    }
+
     /**
      * Parses longs from a (big-endian) byte array.
      *
@@ -443,10 +2254,40 @@ public class BinaryPropertyListParser {
      * @return The long integer represented by the given bytes.
      */
     public static final long parseLong(byte[] bytes) {
+        return parseLong(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses a long from a part of a (big-endian) byte array.
+     *
+     * @param bytes      The byte array containing the long integer.
+     * @param startIndex The index of the first byte of the long integer.
+     * @param endIndex   The index after the last byte of the long integer.
+     * @return The long integer represented by the given bytes.
+     */
+    public static final long parseLong(byte[] bytes, int startIndex, int endIndex) {
+        long l = 0;
+        for (int i = startIndex; i < endIndex; i++) {
+            l <<= 8;
+            l |= bytes[i] & 0xFF;
+        }
+        return l;
+    }
+
+    /**
+     * Parses a long from a part of a (big-endian) byte buffer.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer     The byte buffer containing the long integer.
+     * @param startIndex The index of the first byte of the long integer.
+     * @param endIndex   The index after the last byte of the long integer.
+     * @return The long integer represented by the given bytes.
+     */
+    public static final long parseLong(ByteBuffer buffer, int startIndex, int endIndex) {
         long l = 0;
-        for (byte b : bytes) {
+        for (int i = startIndex; i < endIndex; i++) {
             l <<= 8;
-            l |= b & 0xFF;
+            l |= buffer.get(i) & 0xFF;
         }
         return l;
     }
@@ -458,12 +2299,45 @@ public class BinaryPropertyListParser {
      * @return The double represented by the given bytes.
      */
     public static final double parseDouble(byte[] bytes) {
-        if (bytes.length == 8) {
-            return Double.longBitsToDouble(parseLong(bytes));
-        } else if (bytes.length == 4) {
-            return Float.intBitsToFloat((int) parseLong(bytes));
+        return parseDouble(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses a double from a part of a (big-endian) byte array.
+     *
+     * @param bytes      The byte array containing the double.
+     * @param startIndex The index of the first byte of the double.
+     * @param endIndex   The index after the last byte of the double.
+     * @return The double represented by the given bytes.
+     */
+    public static final double parseDouble(byte[] bytes, int startIndex, int endIndex) {
+        int length = endIndex - startIndex;
+        if (length == 8) {
+            return Double.longBitsToDouble(parseLong(bytes, startIndex, endIndex));
+        } else if (length == 4) {
+            return Float.intBitsToFloat((int) parseLong(bytes, startIndex, endIndex));
+        } else {
+            throw new IllegalArgumentException("bad byte array length " + length);
+        }
+    }
+
+    /**
+     * Parses a double from a part of a (big-endian) byte buffer.
+     * The position of the buffer is not changed.
+     *
+     * @param buffer     The byte buffer containing the double.
+     * @param startIndex The index of the first byte of the double.
+     * @param endIndex   The index after the last byte of the double.
+     * @return The double represented by the given bytes.
+     */
+    public static final double parseDouble(ByteBuffer buffer, int startIndex, int endIndex) {
+        int length = endIndex - startIndex;
+        if (length == 8) {
+            return Double.longBitsToDouble(parseLong(buffer, startIndex, endIndex));
+        } else if (length == 4) {
+            return Float.intBitsToFloat((int) parseLong(buffer, startIndex, endIndex));
         } else {
-            throw new IllegalArgumentException("bad byte array length " + bytes.length);
+            throw new IllegalArgumentException("bad byte array length " + length);
         }
     }
 
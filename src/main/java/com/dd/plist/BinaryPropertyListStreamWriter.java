@@ -0,0 +1,455 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 The dd-plist contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes a binary property list while it is being generated, without building
+ * the whole tree of NSObjects first. Containers are opened and closed with
+ * the begin and end methods, values are added with the value methods and
+ * the entries of a dictionary are each preceded by a call to {@link #key(String)}:
+ * <pre>
+ * BinaryPropertyListStreamWriter w = new BinaryPropertyListStreamWriter(out);
+ * w.beginDict();
+ * w.key("name");
+ * w.value("plist");
+ * w.key("sizes");
+ * w.beginArray();
+ * w.value(1);
+ * w.value(2);
+ * w.endArray();
+ * w.endDict();
+ * w.finish();
+ * </pre>
+ * Each object is written as soon as it is complete, a container after all of its entries.
+ * Only the offsets of the objects and the references of the entries of the open
+ * containers are kept in memory. As the number of objects is not known in advance,
+ * object references are always 4 bytes long. The most recently used dictionary keys,
+ * by default up to {@link #DEFAULT_MAX_KEYS}, are remembered and written only once.
+ * Other keys, e.g. row IDs that each occur in a single dictionary, are written as new
+ * string objects, so memory use does not grow with the number of distinct keys.
+ * Values are never merged.
+ * <p/>
+ * Calling the methods in an order that does not describe a single property list,
+ * for example adding a value to a dictionary without a key, throws an
+ * IllegalStateException.
+ *
+ * @see BinaryPropertyListWriter
+ */
+public class BinaryPropertyListStreamWriter {
+
+    /**
+     * The default maximum number of dictionary keys remembered for reuse.
+     */
+    public static final int DEFAULT_MAX_KEYS = 1024;
+
+    // the size of an object reference
+    private static final int ID_SIZE_IN_BYTES = 4;
+
+    // the object type markers of the containers
+    private static final int ARRAY = 0xA;
+    private static final int SET = 0xC;
+    private static final int DICT = 0xD;
+
+    private final BinaryPropertyListWriter writer;
+
+    // offsets of the objects written so far, indexed by ID
+    private long[] offsets = new long[1024];
+    private int objectCount;
+
+    // references to the entries of the open containers, for dictionaries the key and value of each entry
+    private int[] refs = new int[256];
+    private int refCount;
+
+    // the type and the index of the first reference of each open container
+    private int[] containers = new int[32];
+    private int depth;
+
+    // map from the most recently used dictionary keys to the IDs of their string objects
+    private final Map<String, Integer> keyIdMap;
+
+    private int root = -1;
+    private boolean finished;
+
+    /**
+     * Creates a writer that writes a property list to a stream.
+     *
+     * @param out The stream to write to.
+     * @throws IOException When the header cannot be written.
+     */
+    public BinaryPropertyListStreamWriter(OutputStream out) throws IOException {
+        this(out, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * Creates a writer that writes a property list to a stream.
+     *
+     * @param out     The stream to write to.
+     * @param maxKeys The maximum number of dictionary keys remembered for reuse,
+     *                0 to write every key as a new string object.
+     * @throws IOException When the header cannot be written.
+     */
+    public BinaryPropertyListStreamWriter(OutputStream out, int maxKeys) throws IOException {
+        this(new BinaryPropertyListWriter(out, BinaryPropertyListWriter.VERSION_00), maxKeys);
+    }
+
+    /**
+     * Creates a writer that writes a property list to a channel, e.g. of a file.
+     *
+     * @param channel The channel to write to.
+     * @throws IOException When the header cannot be written.
+     */
+    public BinaryPropertyListStreamWriter(WritableByteChannel channel) throws IOException {
+        this(channel, DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * Creates a writer that writes a property list to a channel, e.g. of a file.
+     *
+     * @param channel The channel to write to.
+     * @param maxKeys The maximum number of dictionary keys remembered for reuse,
+     *                0 to write every key as a new string object.
+     * @throws IOException When the header cannot be written.
+     */
+    public BinaryPropertyListStreamWriter(WritableByteChannel channel, int maxKeys) throws IOException {
+        this(new BinaryPropertyListWriter(channel, BinaryPropertyListWriter.VERSION_00), maxKeys);
+    }
+
+    private BinaryPropertyListStreamWriter(BinaryPropertyListWriter writer, final int maxKeys) throws IOException {
+        if (maxKeys < 0) {
+            throw new IllegalArgumentException("The maximum number of keys must not be negative: " + maxKeys);
+        }
+        this.writer = writer;
+        keyIdMap = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > maxKeys;
+            }
+        };
+        writer.setIdSizeInBytes(ID_SIZE_IN_BYTES);
+        writer.writeHeader();
+    }
+
+    /**
+     * Opens an array. Its entries are the values added until it is closed.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    public void beginArray() throws IOException {
+        begin(ARRAY);
+    }
+
+    /**
+     * Closes the innermost open container, which must be an array, and writes it.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    public void endArray() throws IOException {
+        end(ARRAY);
+    }
+
+    /**
+     * Opens a set. Its entries are the values added until it is closed.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    public void beginSet() throws IOException {
+        begin(SET);
+    }
+
+    /**
+     * Closes the innermost open container, which must be a set, and writes it.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    public void endSet() throws IOException {
+        end(SET);
+    }
+
+    /**
+     * Opens a dictionary. Its entries are added by calling {@link #key(String)}
+     * followed by a value, until it is closed.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    public void beginDict() throws IOException {
+        begin(DICT);
+    }
+
+    /**
+     * Closes the innermost open container, which must be a dictionary, and writes it.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    public void endDict() throws IOException {
+        end(DICT);
+    }
+
+    /**
+     * Adds a key to the innermost open container, which must be a dictionary.
+     * The next value is stored under that key.
+     *
+     * @param key The key.
+     * @throws IOException When an error occurs while writing.
+     */
+    public void key(String key) throws IOException {
+        if (key == null) {
+            throw new IllegalArgumentException("The key of a dictionary entry must not be null.");
+        }
+        if (depth == 0 || containers[depth * 2 - 2] != DICT || !expectsKey()) {
+            throw new IllegalStateException("A key can only be added to a dictionary, followed by its value.");
+        }
+        Integer id = keyIdMap.get(key);
+        if (id == null) {
+            id = startObject();
+            writer.writeString(key);
+            keyIdMap.put(key, id);
+        }
+        addRef(id);
+    }
+
+    /**
+     * Adds a string.
+     *
+     * @param value The string.
+     * @throws IOException When an error occurs while writing.
+     */
+    public void value(String value) throws IOException {
+        if (value == null) {
+            value((NSObject) null);
+        } else {
+            checkValue();
+            int id = startObject();
+            writer.writeString(value);
+            addValue(id);
+        }
+    }
+
+    /**
+     * Adds an integer.
+     *
+     * @param value The integer.
+     * @throws IOException When an error occurs while writing.
+     */
+    public void value(long value) throws IOException {
+        value(new NSNumber(value));
+    }
+
+    /**
+     * Adds a real number.
+     *
+     * @param value The real number.
+     * @throws IOException When an error occurs while writing.
+     */
+    public void value(double value) throws IOException {
+        value(new NSNumber(value));
+    }
+
+    /**
+     * Adds a boolean.
+     *
+     * @param value The boolean.
+     * @throws IOException When an error occurs while writing.
+     */
+    public void value(boolean value) throws IOException {
+        value(new NSNumber(value));
+    }
+
+    /**
+     * Adds binary data.
+     *
+     * @param value The data.
+     * @throws IOException When an error occurs while writing.
+     */
+    public void value(byte[] value) throws IOException {
+        value(value != null ? new NSData(value) : null);
+    }
+
+    /**
+     * Adds a date.
+     *
+     * @param value The date.
+     * @throws IOException When an error occurs while writing.
+     */
+    public void value(Date value) throws IOException {
+        value(value != null ? new NSDate(value) : null);
+    }
+
+    /**
+     * Adds an object. Arrays, sets and dictionaries are written with all of
+     * their entries, as if their contents had been added one by one.
+     *
+     * @param value The object, may be <code>null</code>.
+     * @throws IOException When an error occurs while writing.
+     */
+    public void value(NSObject value) throws IOException {
+        if (value instanceof NSArray) {
+            beginArray();
+            for (NSObject o : ((NSArray) value).getArray()) {
+                value(o);
+            }
+            endArray();
+        } else if (value instanceof NSSet) {
+            beginSet();
+            for (NSObject o : ((NSSet) value).allObjects()) {
+                value(o);
+            }
+            endSet();
+        } else if (value instanceof NSDictionary) {
+            beginDict();
+            for (Map.Entry<String, NSObject> entry : ((NSDictionary) value).entrySet()) {
+                key(entry.getKey());
+                value(entry.getValue());
+            }
+            endDict();
+        } else {
+            checkValue();
+            int id = startObject();
+            if (value == null) {
+                writer.write(0x00);
+            } else {
+                value.toBinary(writer);
+            }
+            addValue(id);
+        }
+    }
+
+    /**
+     * Writes the offset table and the trailer, after the root object has been written
+     * and all containers have been closed. The stream or channel is flushed but not closed.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    public void finish() throws IOException {
+        if (finished || depth > 0 || root < 0) {
+            throw new IllegalStateException("The property list is incomplete or has already been finished.");
+        }
+        writer.writeTrailer(offsets, objectCount, root);
+        writer.flush();
+        finished = true;
+    }
+
+    private void begin(int type) {
+        checkValue();
+        if (depth * 2 == containers.length) {
+            int[] newContainers = new int[containers.length * 2];
+            System.arraycopy(containers, 0, newContainers, 0, containers.length);
+            containers = newContainers;
+        }
+        containers[depth * 2] = type;
+        containers[depth * 2 + 1] = refCount;
+        depth++;
+    }
+
+    private void end(int type) throws IOException {
+        if (depth == 0 || containers[depth * 2 - 2] != type) {
+            throw new IllegalStateException("The innermost open container is not of the closed type.");
+        }
+        if (type == DICT && !expectsKey()) {
+            throw new IllegalStateException("The last key of the dictionary has no value.");
+        }
+        depth--;
+        int first = containers[depth * 2 + 1];
+        int id = startObject();
+        if (type == DICT) {
+            writer.writeIntHeader(type, (refCount - first) / 2);
+            //all keys, then all values
+            for (int i = first; i < refCount; i += 2) {
+                writer.writeID(refs[i]);
+            }
+            for (int i = first + 1; i < refCount; i += 2) {
+                writer.writeID(refs[i]);
+            }
+        } else {
+            writer.writeIntHeader(type, refCount - first);
+            for (int i = first; i < refCount; i++) {
+                writer.writeID(refs[i]);
+            }
+        }
+        refCount = first;
+        addValue(id);
+    }
+
+    /**
+     * Checks whether a value can be added at the current position.
+     */
+    private void checkValue() {
+        if (finished || (depth == 0 && root >= 0)) {
+            throw new IllegalStateException("A property list has only one root object.");
+        }
+        if (depth > 0 && containers[depth * 2 - 2] == DICT && expectsKey()) {
+            throw new IllegalStateException("A value in a dictionary must be preceded by its key.");
+        }
+    }
+
+    /**
+     * Checks whether the innermost open dictionary expects a key, i.e. the value
+     * of its last key has been added.
+     */
+    private boolean expectsKey() {
+        return (refCount - containers[depth * 2 - 1]) % 2 == 0;
+    }
+
+    /**
+     * Records the offset of the next object and assigns an ID to it.
+     *
+     * @return The ID.
+     */
+    private int startObject() {
+        if (objectCount == offsets.length) {
+            long[] newOffsets = new long[offsets.length * 2];
+            System.arraycopy(offsets, 0, newOffsets, 0, offsets.length);
+            offsets = newOffsets;
+        }
+        offsets[objectCount] = writer.getPosition();
+        return objectCount++;
+    }
+
+    /**
+     * Adds a completed object to the innermost open container or makes it the root object.
+     *
+     * @param id The ID of the object.
+     */
+    private void addValue(int id) {
+        if (depth == 0) {
+            root = id;
+        } else {
+            addRef(id);
+        }
+    }
+
+    private void addRef(int id) {
+        if (refCount == refs.length) {
+            int[] newRefs = new int[refs.length * 2];
+            System.arraycopy(refs, 0, newRefs, 0, refs.length);
+            refs = newRefs;
+        }
+        refs[refCount++] = id;
+    }
+}
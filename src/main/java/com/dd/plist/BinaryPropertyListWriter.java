@@ -23,13 +23,18 @@
 
 package com.dd.plist;
 
-import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -48,43 +53,24 @@ public class BinaryPropertyListWriter {
     public static final int VERSION_20 = 20;
 
     /**
-     * Finds out the minimum binary property list format version that
-     * can be used to save the given NSObject tree.
-     *
-     * @param root Object root
-     * @return Version code
-     */
-    private static int getMinimumRequiredVersion(NSObject root) {
-        int minVersion = VERSION_00;
-        if (root == null) {
-            minVersion = VERSION_10;
-        }
-        if (root instanceof NSDictionary) {
-            NSDictionary dict = (NSDictionary) root;
-            for (NSObject o : dict.getHashMap().values()) {
-                int v = getMinimumRequiredVersion(o);
-                if (v > minVersion)
-                    minVersion = v;
-            }
-        } else if (root instanceof NSArray) {
-            NSArray array = (NSArray) root;
-            for (NSObject o : array.getArray()) {
-                int v = getMinimumRequiredVersion(o);
-                if (v > minVersion)
-                    minVersion = v;
-            }
-        } else if (root instanceof NSSet) {
-            //Sets are only allowed in property lists v1+
-            minVersion = VERSION_10;
-            NSSet set = (NSSet) root;
-            for (NSObject o : set.allObjects()) {
-                int v = getMinimumRequiredVersion(o);
-                if (v > minVersion)
-                    minVersion = v;
-            }
-        }
-        return minVersion;
-    }
+     * No objects are merged, each object is written once per instance. This is the fastest policy,
+     * as no object is hashed or compared.
+     */
+    public static final int DEDUP_NONE = 0;
+    /**
+     * Equal numbers, booleans, dates and UIDs are written only once.
+     */
+    public static final int DEDUP_SCALARS = 1;
+    /**
+     * Equal numbers, booleans, dates, UIDs, strings and data objects are written only once.
+     * This is the default policy.
+     */
+    public static final int DEDUP_STRINGS = 2;
+    /**
+     * Equal objects, including equal arrays, sets and dictionaries, are written only once.
+     * This produces the smallest output but takes the longest to write.
+     */
+    public static final int DEDUP_FULL = 3;
 
     /**
      * Writes a binary plist file with the given object as the root.
@@ -94,8 +80,20 @@ public class BinaryPropertyListWriter {
      * @throws IOException
      */
     public static void write(File file, NSObject root) throws IOException {
-        OutputStream out = new FileOutputStream(file);
-        write(out, root);
+        write(file, root, DEDUP_STRINGS);
+    }
+
+    /**
+     * Writes a binary plist file with the given object as the root.
+     *
+     * @param file  the file to write to
+     * @param root  the source of the data to write to the file
+     * @param dedup the policy for merging equal objects, one of the DEDUP constants
+     * @throws IOException
+     */
+    public static void write(File file, NSObject root, int dedup) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        write(out.getChannel(), root, dedup);
         out.close();
     }
 
@@ -107,13 +105,48 @@ public class BinaryPropertyListWriter {
      * @throws IOException
      */
     public static void write(OutputStream out, NSObject root) throws IOException {
-        int minVersion = getMinimumRequiredVersion(root);
-        if (minVersion > VERSION_00) {
-            String versionString = ((minVersion == VERSION_10) ? "v1.0" : ((minVersion == VERSION_15) ? "v1.5" : ((minVersion == VERSION_20) ? "v2.0" : "v0.0")));
-            throw new IOException("The given property list structure cannot be saved. " +
-                    "The required version of the binary format (" + versionString + ") is not yet supported.");
-        }
-        BinaryPropertyListWriter w = new BinaryPropertyListWriter(out, minVersion);
+        write(out, root, DEDUP_STRINGS);
+    }
+
+    /**
+     * Writes a binary plist serialization of the given object as the root.
+     *
+     * @param out   the stream to write to
+     * @param root  the source of the data to write to the stream
+     * @param dedup the policy for merging equal objects, one of the DEDUP constants
+     * @throws IOException
+     */
+    public static void write(OutputStream out, NSObject root, int dedup) throws IOException {
+        BinaryPropertyListWriter w = new BinaryPropertyListWriter(out, VERSION_00);
+        w.setDedup(dedup);
+        w.write(root);
+    }
+
+    /**
+     * Writes a binary plist serialization of the given object as the root
+     * into a channel, e.g. of a file or a socket. The output is written in
+     * blocks from a direct buffer, so it is not copied by the channel.
+     *
+     * @param channel the channel to write to
+     * @param root    the source of the data to write to the channel
+     * @throws IOException
+     */
+    public static void write(WritableByteChannel channel, NSObject root) throws IOException {
+        write(channel, root, DEDUP_STRINGS);
+    }
+
+    /**
+     * Writes a binary plist serialization of the given object as the root
+     * into a channel, e.g. of a file or a socket.
+     *
+     * @param channel the channel to write to
+     * @param root    the source of the data to write to the channel
+     * @param dedup   the policy for merging equal objects, one of the DEDUP constants
+     * @throws IOException
+     */
+    public static void write(WritableByteChannel channel, NSObject root, int dedup) throws IOException {
+        BinaryPropertyListWriter w = new BinaryPropertyListWriter(channel, VERSION_00);
+        w.setDedup(dedup);
         w.write(root);
     }
 
@@ -126,21 +159,90 @@ public class BinaryPropertyListWriter {
      * @throws IOException
      */
     public static byte[] writeToArray(NSObject root) throws IOException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        write(bout, root);
-        return bout.toByteArray();
+        return writeToArray(root, DEDUP_STRINGS);
+    }
+
+    /**
+     * Writes a binary plist serialization of the given object as the root
+     * into a byte array.
+     *
+     * @param root  The root object of the property list
+     * @param dedup The policy for merging equal objects, one of the DEDUP constants
+     * @return The byte array containing the serialized property list
+     * @throws IOException
+     */
+    public static byte[] writeToArray(NSObject root, int dedup) throws IOException {
+        BinaryPropertyListWriter w = new BinaryPropertyListWriter(VERSION_00);
+        w.setDedup(dedup);
+        return w.writeToBuffer(root, false).array();
+    }
+
+    /**
+     * Writes a binary plist serialization of the given object as the root
+     * into a direct byte buffer, i.e. outside of the Java heap.
+     *
+     * @param root The root object of the property list
+     * @return The buffer containing the serialized property list, its limit is the size of the property list
+     * @throws IOException
+     */
+    public static ByteBuffer writeToBuffer(NSObject root) throws IOException {
+        return writeToBuffer(root, DEDUP_STRINGS);
+    }
+
+    /**
+     * Writes a binary plist serialization of the given object as the root
+     * into a direct byte buffer, i.e. outside of the Java heap.
+     *
+     * @param root  The root object of the property list
+     * @param dedup The policy for merging equal objects, one of the DEDUP constants
+     * @return The buffer containing the serialized property list, its limit is the size of the property list
+     * @throws IOException
+     */
+    public static ByteBuffer writeToBuffer(NSObject root, int dedup) throws IOException {
+        BinaryPropertyListWriter w = new BinaryPropertyListWriter(VERSION_00);
+        w.setDedup(dedup);
+        return w.writeToBuffer(root, true);
     }
 
+    /**
+     * The size of the blocks in which the output is written.
+     */
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * The maximum size of a property list written into a buffer, some virtual machines cannot allocate larger arrays.
+     */
+    private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+    //Sets and null values are stored with the object markers of the v1.0 format, but in a file
+    //marked as v0.0: Apple's parsers only accept files starting with "bplist0" and read these markers in them
     private int version = VERSION_00;
 
-    // raw output stream to result file
+    // raw output stream to result file, or null when writing to a channel
     private OutputStream out;
 
-    // # of bytes written so far
+    // channel to result file, or null when writing to a stream
+    private WritableByteChannel channel;
+
+    // the output that has not been passed on to the stream or channel yet
+    private ByteBuffer buffer;
+
+    // # of bytes passed on to the stream or channel so far
     private long count;
 
-    // map from object to its ID
-    private Map<NSObject, Integer> idMap = new HashMap<NSObject, Integer>();
+    private int dedup = DEDUP_STRINGS;
+
+    // map from each object that is not merged by value to its ID, for containers from the
+    // representative of the equal containers when they are merged
+    private Map<NSObject, Integer> identityIdMap = new IdentityHashMap<NSObject, Integer>();
+    // map from any other object to its ID, equal objects are written only once
+    private Map<NSObject, Integer> valueIdMap = new HashMap<NSObject, Integer>();
+    // map from each container that equals an earlier one to that container, with DEDUP_FULL
+    private Map<NSObject, NSObject> representatives;
+    // map from dictionary key to the ID of its string object
+    private Map<String, Integer> keyIdMap = new HashMap<String, Integer>();
+    // all objects, indexed by ID
+    private List<NSObject> objects = new ArrayList<NSObject>();
     private int idSizeInBytes;
 
     /**
@@ -150,15 +252,127 @@ public class BinaryPropertyListWriter {
      * @throws IOException
      */
     BinaryPropertyListWriter(OutputStream outStr) throws IOException {
-        out = new BufferedOutputStream(outStr);
+        out = outStr;
+        buffer = ByteBuffer.allocate(BLOCK_SIZE);
     }
 
     BinaryPropertyListWriter(OutputStream outStr, int version) throws IOException {
+        this(outStr);
         this.version = version;
-        out = new BufferedOutputStream(outStr);
+    }
+
+    BinaryPropertyListWriter(int version) {
+        this.version = version;
+    }
+
+    BinaryPropertyListWriter(WritableByteChannel channel, int version) throws IOException {
+        this.version = version;
+        this.channel = channel;
+        buffer = ByteBuffer.allocateDirect(BLOCK_SIZE);
+    }
+
+    /**
+     * Sets the policy for merging equal objects.
+     *
+     * @param dedup One of the DEDUP constants.
+     */
+    void setDedup(int dedup) {
+        if (dedup < DEDUP_NONE || dedup > DEDUP_FULL) {
+            throw new IllegalArgumentException("Unknown deduplication policy: " + dedup);
+        }
+        this.dedup = dedup;
+    }
+
+    /**
+     * Sets the size of the object references, for writers that assign IDs themselves.
+     *
+     * @param idSizeInBytes The size of an object reference in bytes.
+     */
+    void setIdSizeInBytes(int idSizeInBytes) {
+        this.idSizeInBytes = idSizeInBytes;
     }
 
     void write(NSObject root) throws IOException {
+        // assign IDs to all the objects.
+        assignIDs(root);
+
+        writeObjects(root);
+
+        flush();
+    }
+
+    /**
+     * Passes all buffered output on to the stream or channel and flushes the stream.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    void flush() throws IOException {
+        flushBuffer();
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes the property list into a buffer of exactly its size. The property list
+     * is encoded once into a growing buffer, which is then copied into a buffer of
+     * exactly its size unless it already has that size.
+     *
+     * @param root   The root object of the property list.
+     * @param direct Whether the buffer is allocated outside of the Java heap.
+     * @return The buffer containing the property list, ready to be read.
+     * @throws IOException When the property list is too large for a buffer.
+     */
+    ByteBuffer writeToBuffer(NSObject root, boolean direct) throws IOException {
+        assignIDs(root);
+
+        //without a stream or channel the buffer grows until it holds the whole output
+        buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        writeObjects(root);
+        buffer.flip();
+        if (!direct && buffer.limit() == buffer.capacity()) {
+            return buffer;
+        }
+        ByteBuffer result = direct ? ByteBuffer.allocateDirect(buffer.limit()) : ByteBuffer.allocate(buffer.limit());
+        result.put(buffer);
+        result.flip();
+        return result;
+    }
+
+    /**
+     * Writes the header, the objects, the offset table and the trailer.
+     *
+     * @param root The root object of the property list, all objects have an ID.
+     * @throws IOException When an error occurs while writing.
+     */
+    private void writeObjects(NSObject root) throws IOException {
+        writeHeader();
+
+        idSizeInBytes = computeIdSizeInBytes(objects.size());
+
+        // offsets of each object, indexed by ID
+        long[] offsets = new long[objects.size()];
+
+        // write each object, save offset
+        for (int id = 0; id < offsets.length; id++) {
+            NSObject obj = objects.get(id);
+            offsets[id] = getPosition();
+            if (obj == null) {
+                write(0x00);
+            } else {
+                obj.toBinary(this);
+            }
+        }
+
+        writeTrailer(offsets, offsets.length, getID(root));
+    }
+
+    /**
+     * Writes the magic bytes and the format version.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    void writeHeader() throws IOException {
         // magic bytes
         write(new byte[]{'b', 'p', 'l', 'i', 's', 't'});
 
@@ -181,32 +395,22 @@ public class BinaryPropertyListWriter {
                 break;
             }
         }
+    }
 
-        // assign IDs to all the objects.
-        root.assignIDs(this);
-
-        idSizeInBytes = computeIdSizeInBytes(idMap.size());
-
-        // offsets of each object, indexed by ID
-        long[] offsets = new long[idMap.size()];
-
-        // write each object, save offset
-        for (Map.Entry<NSObject, Integer> entry : idMap.entrySet()) {
-            NSObject obj = entry.getKey();
-            int id = entry.getValue();
-            offsets[id] = count;
-            if (obj == null) {
-                write(0x00);
-            } else {
-                obj.toBinary(this);
-            }
-        }
-
+    /**
+     * Writes the offset table and the trailer, which follow the objects.
+     *
+     * @param offsets     The offsets of the objects, indexed by ID.
+     * @param objectCount The number of objects.
+     * @param topObject   The ID of the root object.
+     * @throws IOException When an error occurs while writing.
+     */
+    void writeTrailer(long[] offsets, int objectCount, int topObject) throws IOException {
         // write offset table
-        long offsetTableOffset = count;
-        int offsetSizeInBytes = computeOffsetSizeInBytes(count);
-        for (long offset : offsets) {
-            writeBytes(offset, offsetSizeInBytes);
+        long offsetTableOffset = getPosition();
+        int offsetSizeInBytes = computeOffsetSizeInBytes(offsetTableOffset);
+        for (int id = 0; id < objectCount; id++) {
+            writeBytes(offsets[id], offsetSizeInBytes);
         }
 
         if (version != VERSION_15) {
@@ -218,24 +422,306 @@ public class BinaryPropertyListWriter {
             // size of a ref
             write(idSizeInBytes);
             // number of objects
-            writeLong(idMap.size());
+            writeLong(objectCount);
             // top object
-            writeLong(idMap.get(root));
+            writeLong(topObject);
             // offset table offset
             writeLong(offsetTableOffset);
         }
+    }
+
+    /**
+     * Assigns IDs to an object and to all objects contained in it. The IDs are assigned
+     * depth-first, starting with the root, and the keys of a dictionary directly follow
+     * the dictionary. As objects are written in the order of their IDs, the output only depends
+     * on the property list and each container is followed by its entries in the order
+     * in which they are read by a parser.
+     * Null values, which can be contained in arrays, sets and dictionaries, get an ID as well.
+     *
+     * @param root The root object, may be <code>null</code>.
+     */
+    private void assignIDs(NSObject root) {
+        if (dedup == DEDUP_FULL) {
+            mergeContainers(root);
+        }
+        //the entries of the containers on the current path and the index of the next entry of each
+        List<NSObject[]> path = new ArrayList<NSObject[]>();
+        int[] indexes = new int[16];
+        NSObject obj = root;
+        while (true) {
+            if (assignID(obj) && isContainer(obj)) {
+                if (obj instanceof NSDictionary) {
+                    assignKeyIDs((NSDictionary) obj);
+                }
+                if (path.size() == indexes.length) {
+                    int[] newIndexes = new int[indexes.length * 2];
+                    System.arraycopy(indexes, 0, newIndexes, 0, indexes.length);
+                    indexes = newIndexes;
+                }
+                indexes[path.size()] = 0;
+                path.add(getEntries(obj));
+            }
+            //find the next entry, leaving the containers whose entries all have IDs
+            boolean next = false;
+            while (!next && !path.isEmpty()) {
+                int top = path.size() - 1;
+                NSObject[] entries = path.get(top);
+                if (indexes[top] < entries.length) {
+                    obj = entries[indexes[top]++];
+                    next = true;
+                } else {
+                    path.remove(top);
+                }
+            }
+            if (!next) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the objects contained in an array, set or dictionary.
+     *
+     * @param container The container.
+     * @return The entries, for a dictionary its values.
+     */
+    private static NSObject[] getEntries(NSObject container) {
+        if (container instanceof NSArray) {
+            return ((NSArray) container).getArray();
+        }
+        if (container instanceof NSSet) {
+            return ((NSSet) container).allObjects();
+        }
+        Collection<NSObject> values = ((NSDictionary) container).getHashMap().values();
+        return values.toArray(new NSObject[values.size()]);
+    }
+
+    /**
+     * Assigns IDs to the keys of a dictionary. Each distinct key is only looked up
+     * and converted to a string object once per property list.
+     *
+     * @param dict The dictionary.
+     */
+    private void assignKeyIDs(NSDictionary dict) {
+        for (String key : dict.getHashMap().keySet()) {
+            if (!keyIdMap.containsKey(key)) {
+                NSString str = new NSString(key);
+                assignID(str);
+                keyIdMap.put(key, getID(str));
+            }
+        }
+    }
 
-        out.flush();
+    /**
+     * Gets the ID of the string object of a dictionary key.
+     *
+     * @param key The key.
+     * @return The object ID.
+     */
+    int getKeyID(String key) {
+        return keyIdMap.get(key);
     }
 
-    void assignID(NSObject obj) {
-        if (!idMap.containsKey(obj)) {
-            idMap.put(obj, idMap.size());
+    /**
+     * Assigns an ID to an object. Arrays, sets and dictionaries are identified by
+     * their identity, all other objects by their value.
+     *
+     * @param obj The object, may be <code>null</code>.
+     * @return Whether the object got a new ID, i.e. it has not been seen before.
+     */
+    boolean assignID(NSObject obj) {
+        Map<NSObject, Integer> idMap = isMergedByValue(obj) ? valueIdMap : identityIdMap;
+        NSObject key = getRepresentative(obj);
+        if (idMap.containsKey(key)) {
+            return false;
         }
+        idMap.put(key, objects.size());
+        objects.add(obj);
+        return true;
     }
 
     int getID(NSObject obj) {
-        return idMap.get(obj);
+        return (isMergedByValue(obj) ? valueIdMap : identityIdMap).get(getRepresentative(obj));
+    }
+
+    /**
+     * Checks whether an object is written only once for all equal objects, according to
+     * the deduplication policy. Arrays, sets and dictionaries are never compared by value,
+     * equal containers are merged by {@link #mergeContainers(NSObject)} instead.
+     *
+     * @param obj The object, may be <code>null</code>.
+     * @return Whether equal objects share an ID.
+     */
+    private boolean isMergedByValue(NSObject obj) {
+        switch (dedup) {
+            case DEDUP_NONE:
+                return false;
+            case DEDUP_SCALARS:
+                return !isContainer(obj) && !(obj instanceof NSString) && !(obj instanceof NSData);
+            default:
+                return !isContainer(obj);
+        }
+    }
+
+    private NSObject getRepresentative(NSObject obj) {
+        if (representatives != null) {
+            NSObject representative = representatives.get(obj);
+            if (representative != null) {
+                return representative;
+            }
+        }
+        return obj;
+    }
+
+    /**
+     * Finds the containers that equal an earlier container. The containers are visited bottom-up
+     * and each object gets a number, such that equal objects have the same number. The number of
+     * a container is derived from its type and the numbers of its entries, so each container is
+     * hashed only once instead of comparing whole subtrees.
+     * A container that contains itself is never merged.
+     *
+     * @param root The root object.
+     */
+    private void mergeContainers(NSObject root) {
+        representatives = new IdentityHashMap<NSObject, NSObject>();
+        if (!isContainer(root)) {
+            return;
+        }
+        //number of each container, or -1 while its entries are visited
+        Map<NSObject, Integer> numbers = new IdentityHashMap<NSObject, Integer>();
+        Map<NSObject, Integer> valueNumbers = new HashMap<NSObject, Integer>();
+        Map<String, Integer> keyNumbers = new HashMap<String, Integer>();
+        Map<ContainerContent, NSObject> contents = new HashMap<ContainerContent, NSObject>();
+        int nextNumber = 0;
+
+        //the containers on the current path, their entries and the numbers of the visited entries
+        List<NSObject> path = new ArrayList<NSObject>();
+        List<NSObject[]> pathEntries = new ArrayList<NSObject[]>();
+        List<int[]> pathNumbers = new ArrayList<int[]>();
+        int[] indexes = new int[16];
+        NSObject container = root;
+        while (true) {
+            if (container != null) {
+                //descend into the container
+                NSObject[] entries = getEntries(container);
+                int[] entryNumbers;
+                if (container instanceof NSDictionary) {
+                    //the keys are numbered first, the values follow them
+                    entryNumbers = new int[entries.length * 2];
+                    int i = 0;
+                    for (String key : ((NSDictionary) container).getHashMap().keySet()) {
+                        Integer number = keyNumbers.get(key);
+                        if (number == null) {
+                            number = nextNumber++;
+                            keyNumbers.put(key, number);
+                        }
+                        entryNumbers[i++] = number;
+                    }
+                } else {
+                    entryNumbers = new int[entries.length];
+                }
+                if (path.size() == indexes.length) {
+                    int[] newIndexes = new int[indexes.length * 2];
+                    System.arraycopy(indexes, 0, newIndexes, 0, indexes.length);
+                    indexes = newIndexes;
+                }
+                indexes[path.size()] = 0;
+                numbers.put(container, -1);
+                path.add(container);
+                pathEntries.add(entries);
+                pathNumbers.add(entryNumbers);
+                container = null;
+            }
+
+            int top = path.size() - 1;
+            NSObject[] entries = pathEntries.get(top);
+            int[] entryNumbers = pathNumbers.get(top);
+            int number;
+            if (indexes[top] < entries.length) {
+                NSObject entry = entries[indexes[top]];
+                if (isContainer(entry)) {
+                    Integer entryNumber = numbers.get(entry);
+                    if (entryNumber == null) {
+                        container = entry;
+                        continue;
+                    }
+                    //a container on the current path gets a number of its own
+                    number = entryNumber >= 0 ? entryNumber : nextNumber++;
+                } else {
+                    Integer entryNumber = valueNumbers.get(entry);
+                    if (entryNumber == null) {
+                        entryNumber = nextNumber++;
+                        valueNumbers.put(entry, entryNumber);
+                    }
+                    number = entryNumber;
+                }
+            } else {
+                //all entries are numbered, so the container is complete
+                NSObject completed = path.remove(top);
+                pathEntries.remove(top);
+                pathNumbers.remove(top);
+                //ordered and unordered sets have different markers, so they must not be merged
+                int type;
+                if (completed instanceof NSArray) {
+                    type = 0xA;
+                } else if (completed instanceof NSSet) {
+                    type = ((NSSet) completed).isOrdered() ? 0xB : 0xC;
+                } else {
+                    type = 0xD;
+                }
+                ContainerContent content = new ContainerContent(type, entryNumbers);
+                NSObject representative = contents.get(content);
+                if (representative == null) {
+                    contents.put(content, completed);
+                    number = nextNumber++;
+                } else {
+                    representatives.put(completed, representative);
+                    number = numbers.get(representative);
+                }
+                numbers.put(completed, number);
+                if (path.isEmpty()) {
+                    return;
+                }
+                top--;
+                entryNumbers = pathNumbers.get(top);
+                entries = pathEntries.get(top);
+            }
+            int offset = entryNumbers.length - entries.length;
+            entryNumbers[offset + indexes[top]++] = number;
+        }
+    }
+
+    /**
+     * The type of a container and the numbers of its entries, which identify its content.
+     */
+    private static class ContainerContent {
+        private final int type;
+        private final int[] entryNumbers;
+        private final int hash;
+
+        ContainerContent(int type, int[] entryNumbers) {
+            this.type = type;
+            this.entryNumbers = entryNumbers;
+            hash = 31 * type + Arrays.hashCode(entryNumbers);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ContainerContent)) {
+                return false;
+            }
+            ContainerContent other = (ContainerContent) obj;
+            return type == other.type && hash == other.hash && Arrays.equals(entryNumbers, other.entryNumbers);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static boolean isContainer(NSObject obj) {
+        return obj instanceof NSDictionary || obj instanceof NSArray || obj instanceof NSSet;
     }
 
     private static int computeIdSizeInBytes(int numberOfIds) {
@@ -270,20 +756,175 @@ public class BinaryPropertyListWriter {
         }
     }
 
+    /**
+     * Writes a string object, as ASCII if possible and as UTF-16BE otherwise.
+     * The string is encoded directly, without any shared encoder.
+     *
+     * @param str The string.
+     * @throws IOException When an error occurs while writing.
+     */
+    void writeString(String str) throws IOException {
+        int length = str.length();
+        boolean ascii = true;
+        for (int i = 0; i < length && ascii; i++) {
+            ascii = str.charAt(i) < 0x80;
+        }
+        if (ascii) {
+            writeIntHeader(0x5, length);
+            for (int i = 0; i < length; i++) {
+                if (!buffer.hasRemaining()) {
+                    makeRoom(1);
+                }
+                buffer.put((byte) str.charAt(i));
+            }
+        } else {
+            writeIntHeader(0x6, length);
+            for (int i = 0; i < length; i++) {
+                if (buffer.remaining() < 2) {
+                    makeRoom(2);
+                }
+                buffer.putChar(str.charAt(i));
+            }
+        }
+    }
+
+    /**
+     * Gets the number of bytes written so far.
+     *
+     * @return The offset of the next byte to be written.
+     */
+    long getPosition() {
+        return count + buffer.position();
+    }
+
+    /**
+     * Makes room for the given number of bytes in the buffer. The buffered output is passed
+     * on to the stream or channel, without a stream or channel the buffer is enlarged instead.
+     * When writing to a stream or channel, more bytes than the size of a block do not fit
+     * into the buffer even after this.
+     *
+     * @param length The number of bytes to be written.
+     * @throws IOException When an error occurs while writing or the buffer cannot be enlarged.
+     */
+    private void makeRoom(int length) throws IOException {
+        if (out != null || channel != null) {
+            flushBuffer();
+            return;
+        }
+        long required = (long) buffer.position() + length;
+        if (required > MAX_BUFFER_SIZE) {
+            throw new IOException("The property list is too large (more than " + MAX_BUFFER_SIZE + " bytes) to be written into a buffer.");
+        }
+        int capacity = (int) Math.max(required, Math.min(2L * buffer.capacity(), MAX_BUFFER_SIZE));
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+
+    /**
+     * Passes the buffered output on to the stream or channel.
+     *
+     * @throws IOException When an error occurs while writing.
+     */
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        count += buffer.remaining();
+        if (channel != null) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } else if (out != null) {
+            out.write(buffer.array(), buffer.arrayOffset(), buffer.remaining());
+        }
+        buffer.clear();
+    }
+
     void write(int b) throws IOException {
-        out.write(b);
-        count++;
+        if (!buffer.hasRemaining()) {
+            makeRoom(1);
+        }
+        buffer.put((byte) b);
     }
 
     void write(byte[] bytes) throws IOException {
-        out.write(bytes);
-        count += bytes.length;
+        if (bytes.length > buffer.remaining()) {
+            makeRoom(bytes.length);
+        }
+        if (bytes.length <= buffer.remaining()) {
+            buffer.put(bytes);
+        } else {
+            //larger than a block of a stream or channel, so it is written directly
+            if (channel != null) {
+                ByteBuffer src = ByteBuffer.wrap(bytes);
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+            } else {
+                out.write(bytes);
+            }
+            count += bytes.length;
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer, e.g. a view of a memory-mapped file,
+     * without copying them into an array first.
+     *
+     * @param src The buffer, its position is moved to its limit.
+     * @throws IOException When an error occurs while writing.
+     */
+    void write(ByteBuffer src) throws IOException {
+        if (src.remaining() > buffer.remaining()) {
+            makeRoom(src.remaining());
+        }
+        if (src.remaining() <= buffer.remaining()) {
+            buffer.put(src);
+        } else if (channel != null) {
+            //larger than a block, so it is written directly
+            count += src.remaining();
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+        } else {
+            //the stream needs an array, so the data is passed on block by block
+            while (src.hasRemaining()) {
+                ByteBuffer block = src.duplicate();
+                block.limit(block.position() + Math.min(block.remaining(), buffer.remaining()));
+                buffer.put(block);
+                src.position(block.position());
+                flushBuffer();
+            }
+        }
     }
 
     void writeBytes(long value, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            makeRoom(bytes);
+        }
         // write low-order bytes big-endian style
-        for (int i = bytes - 1; i >= 0; i--) {
-            write((int) (value >> (8 * i)));
+        switch (bytes) {
+            case 1: {
+                buffer.put((byte) value);
+                break;
+            }
+            case 2: {
+                buffer.putShort((short) value);
+                break;
+            }
+            case 4: {
+                buffer.putInt((int) value);
+                break;
+            }
+            case 8: {
+                buffer.putLong(value);
+                break;
+            }
+            default: {
+                for (int i = bytes - 1; i >= 0; i--) {
+                    buffer.put((byte) (value >> (8 * i)));
+                }
+            }
         }
     }
 
@@ -35,6 +35,21 @@ public class NSArray extends NSObject {
 
     private NSObject[] array;
 
+    /**
+     * The binary property list from which the not yet parsed values of this array are read.
+     * This is only set for arrays that were parsed lazily.
+     *
+     * @see BinaryPropertyListParser#parseLazily(java.nio.ByteBuffer)
+     */
+    private BinaryPropertyListParser parser;
+    /**
+     * The object references of the values that have not been parsed yet, -1 for values which are already parsed.
+     * Values are parsed while holding the lock of this array, so that a lazily parsed
+     * array can be read by several threads.
+     */
+    private volatile int[] objectRefs;
+    private int unresolvedCount;
+
     /**
      * Creates an empty array of the given length.
      *
@@ -61,9 +76,70 @@ public class NSArray extends NSObject {
      * @return The object at the given index.
      */
     public NSObject objectAtIndex(int i) {
+        resolve(i);
         return array[i];
     }
 
+    /**
+     * Lets the values of this array be parsed from a binary property list when they are accessed for the first time.
+     *
+     * @param parser     The parser of the binary property list.
+     * @param objectRefs The object references of the values.
+     */
+    void setUnresolvedValues(BinaryPropertyListParser parser, int[] objectRefs) {
+        this.parser = parser;
+        this.objectRefs = objectRefs;
+        unresolvedCount = objectRefs.length;
+        if (unresolvedCount == 0) {
+            this.parser = null;
+            this.objectRefs = null;
+        }
+    }
+
+    /**
+     * Parses the value at the given index if it has not been parsed yet.
+     *
+     * @param i The index of the value.
+     */
+    private void resolve(int i) {
+        if (objectRefs != null) {
+            synchronized (this) {
+                int[] refs = objectRefs;
+                if (refs != null && refs[i] != -1) {
+                    array[i] = parser.parseLazyObject(refs[i]);
+                    markResolved(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses all values that have not been parsed yet.
+     */
+    private void resolveAll() {
+        if (objectRefs != null) {
+            synchronized (this) {
+                for (int i = 0; i < array.length; i++) {
+                    resolve(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks a value as parsed, the lock of this array must be held.
+     *
+     * @param i The index of the value.
+     */
+    private void markResolved(int i) {
+        objectRefs[i] = -1;
+        unresolvedCount--;
+        if (unresolvedCount == 0) {
+            parser = null;
+            objectRefs = null;
+        }
+    }
+
     /**
      * Remove the i-th element from the array.
      * The array will be resized.
@@ -73,6 +149,7 @@ public class NSArray extends NSObject {
     public void remove(int i) {
         if ((i >= array.length) || (i < 0))
             throw new ArrayIndexOutOfBoundsException("invalid index:" + i + ";the array length is " + array.length);
+        resolveAll();
         NSObject[] newArray = new NSObject[array.length - 1];
         System.arraycopy(array, 0, newArray, 0, i);
         System.arraycopy(array, i + 1, newArray, i, array.length - i - 1);
@@ -90,7 +167,11 @@ public class NSArray extends NSObject {
     public void setValue(int key, Object value) {
         if(value == null)
             throw new NullPointerException("Cannot add null values to an NSArray!");
-        array[key] = NSObject.wrap(value);
+        synchronized (this) {
+            array[key] = NSObject.wrap(value);
+            if (objectRefs != null && objectRefs[key] != -1)
+                markResolved(key);
+        }
     }
 
     /**
@@ -100,6 +181,7 @@ public class NSArray extends NSObject {
      * @return The actual array represented by this NSArray.
      */
     public NSObject[] getArray() {
+        resolveAll();
         return array;
     }
 
@@ -121,9 +203,10 @@ public class NSArray extends NSObject {
      * @see Object#equals(java.lang.Object)
      */
     public boolean containsObject(Object obj) {
-        NSObject nso = NSObject.wrap(obj);
+        NSObject nso = obj != null ? NSObject.wrap(obj) : null;
+        resolveAll();
         for (NSObject elem : array) {
-            if (elem.equals(nso)) {
+            if (entriesEqual(elem, nso)) {
                 return true;
             }
         }
@@ -141,9 +224,10 @@ public class NSArray extends NSObject {
      * @see #indexOfIdenticalObject(Object)
      */
     public int indexOfObject(Object obj) {
-        NSObject nso = NSObject.wrap(obj);
+        NSObject nso = obj != null ? NSObject.wrap(obj) : null;
+        resolveAll();
         for (int i = 0; i < array.length; i++) {
-            if (array[i].equals(nso)) {
+            if (entriesEqual(array[i], nso)) {
                 return i;
             }
         }
@@ -161,7 +245,8 @@ public class NSArray extends NSObject {
      * @see #indexOfObject(Object)
      */
     public int indexOfIdenticalObject(Object obj) {
-        NSObject nso = NSObject.wrap(obj);
+        NSObject nso = obj != null ? NSObject.wrap(obj) : null;
+        resolveAll();
         for (int i = 0; i < array.length; i++) {
             if (array[i] == nso) {
                 return i;
@@ -177,7 +262,7 @@ public class NSArray extends NSObject {
      * @return The value of the highest index in the array.
      */
     public NSObject lastObject() {
-        return array[array.length - 1];
+        return objectAtIndex(array.length - 1);
     }
 
     /**
@@ -191,18 +276,21 @@ public class NSArray extends NSObject {
         NSObject[] result = new NSObject[indexes.length];
         Arrays.sort(indexes);
         for (int i = 0; i < indexes.length; i++)
-            result[i] = array[indexes[i]];
+            result[i] = objectAtIndex(indexes[i]);
         return result;
     }
 
     @Override
     public boolean equals(Object obj) {
+        if(obj == null) {
+            return false;
+        }
         if(obj.getClass().equals(NSArray.class)) {
-            return Arrays.equals(((NSArray) obj).getArray(), this.array);
+            return Arrays.equals(((NSArray) obj).getArray(), getArray());
         } else {
             NSObject nso = NSObject.wrap(obj);
             if(nso.getClass().equals(NSArray.class)) {
-                return Arrays.equals(((NSArray) nso).getArray(), this.array);
+                return Arrays.equals(((NSArray) nso).getArray(), getArray());
             }
         }
         return false;
@@ -211,16 +299,18 @@ public class NSArray extends NSObject {
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 89 * hash + Arrays.deepHashCode(this.array);
+        hash = 89 * hash + Arrays.deepHashCode(getArray());
         return hash;
     }
 
     @Override
     void toXML(StringBuilder xml, int level) {
+        resolveAll();
         indent(xml, level);
         xml.append("<array>");
         xml.append(NSObject.NEWLINE);
         for (NSObject o : array) {
+            checkTextEntry(o);
             o.toXML(xml, level + 1);
             xml.append(NSObject.NEWLINE);
         }
@@ -228,16 +318,9 @@ public class NSArray extends NSObject {
         xml.append("</array>");
     }
 
-    @Override
-    void assignIDs(BinaryPropertyListWriter out) {
-        super.assignIDs(out);
-        for (NSObject obj : array) {
-            obj.assignIDs(out);
-        }
-    }
-
     @Override
     void toBinary(BinaryPropertyListWriter out) throws IOException {
+        resolveAll();
         out.writeIntHeader(0xA, array.length);
         for (NSObject obj : array) {
             out.writeID(out.getID(obj));
@@ -277,10 +360,12 @@ public class NSArray extends NSObject {
 
     @Override
     protected void toASCII(StringBuilder ascii, int level) {
+        resolveAll();
         indent(ascii, level);
         ascii.append(ASCIIPropertyListParser.ARRAY_BEGIN_TOKEN);
         int indexOfLastNewLine = ascii.lastIndexOf(NEWLINE);
         for (int i = 0; i < array.length; i++) {
+            checkTextEntry(array[i]);
             Class<?> objClass = array[i].getClass();
             if ((objClass.equals(NSDictionary.class) || objClass.equals(NSArray.class) || objClass.equals(NSData.class))
                     && indexOfLastNewLine != ascii.length()) {
@@ -306,10 +391,12 @@ public class NSArray extends NSObject {
 
     @Override
     protected void toASCIIGnuStep(StringBuilder ascii, int level) {
+        resolveAll();
         indent(ascii, level);
         ascii.append(ASCIIPropertyListParser.ARRAY_BEGIN_TOKEN);
         int indexOfLastNewLine = ascii.lastIndexOf(NEWLINE);
         for (int i = 0; i < array.length; i++) {
+            checkTextEntry(array[i]);
             Class<?> objClass = array[i].getClass();
             if ((objClass.equals(NSDictionary.class) || objClass.equals(NSArray.class) || objClass.equals(NSData.class))
                     && indexOfLastNewLine != ascii.length()) {
@@ -27,16 +27,30 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Arrays;
 
 /**
  * NSData objects are wrappers for byte buffers.
+ * <p/>
+ * A NSData object can also be a read-only view of a part of a larger buffer,
+ * e.g. of a memory-mapped binary property list, so that large data does not
+ * have to be copied when it is parsed. The data is only copied into a byte array
+ * when it is accessed through <code>bytes()</code>, all other methods, including
+ * the serializers, read the data directly from the buffer.
  *
  * @author Daniel Dreibrodt
  */
 public class NSData extends NSObject {
 
-    private byte[] bytes;
+    private volatile byte[] bytes;
+
+    /**
+     * The read-only buffer containing the data, which is only used while <code>bytes</code> is <code>null</code>.
+     * It is kept when the data is copied into <code>bytes</code>, so that threads which have not seen
+     * the copy yet can still read the data from it.
+     */
+    private ByteBuffer buffer;
 
     /**
      * Creates the NSData object from the binary representation of it.
@@ -47,6 +61,17 @@ public class NSData extends NSObject {
         this.bytes = bytes;
     }
 
+    /**
+     * Creates a NSData object which is a view of the remaining bytes of the given buffer.
+     * The bytes are not copied until they are accessed through <code>bytes()</code>,
+     * thus the contents of the buffer must not be modified as long as this object is in use.
+     *
+     * @param buffer The buffer containing the data.
+     */
+    public NSData(ByteBuffer buffer) {
+        this.buffer = buffer.slice().asReadOnlyBuffer();
+    }
+
     /**
      * Creates a NSData object from its textual representation, which is a Base64 encoded amount of bytes.
      *
@@ -76,10 +101,22 @@ public class NSData extends NSObject {
 
     /**
      * The bytes contained in this NSData object.
+     * If this object is a view of a buffer, the data is copied into a byte array first.
+     * Changes to the returned array affect this object but never the buffer it was created from.
      *
      * @return The data as bytes
      */
     public byte[] bytes() {
+        byte[] bytes = this.bytes;
+        if (bytes == null) {
+            synchronized (this) {
+                bytes = this.bytes;
+                if (bytes == null) {
+                    bytes = copyBytes();
+                    this.bytes = bytes;
+                }
+            }
+        }
         return bytes;
     }
 
@@ -89,7 +126,21 @@ public class NSData extends NSObject {
      * @return The number of bytes contained in this object.
      */
     public int length() {
-        return bytes.length;
+        byte[] bytes = this.bytes;
+        return bytes != null ? bytes.length : buffer.limit();
+    }
+
+    /**
+     * Gets a read-only buffer containing the data of this object without copying it.
+     *
+     * @return A read-only buffer whose remaining bytes are the data.
+     */
+    public ByteBuffer getByteBuffer() {
+        byte[] bytes = this.bytes;
+        if (bytes != null) {
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+        return buffer.duplicate();
     }
 
     /**
@@ -99,7 +150,7 @@ public class NSData extends NSObject {
      * @param length The amount of data to copy
      */
     public void getBytes(ByteBuffer buf, int length) {
-        buf.put(bytes, 0, Math.min(bytes.length, length));
+        getBytes(buf, 0, length);
     }
 
     /**
@@ -110,7 +161,15 @@ public class NSData extends NSObject {
      * @param rangeStop  The stop index
      */
     public void getBytes(ByteBuffer buf, int rangeStart, int rangeStop) {
-        buf.put(bytes, rangeStart, Math.min(bytes.length, rangeStop));
+        byte[] bytes = this.bytes;
+        if (bytes != null) {
+            buf.put(bytes, rangeStart, Math.min(bytes.length, rangeStop));
+        } else {
+            ByteBuffer src = buffer.duplicate();
+            src.position(rangeStart);
+            src.limit(rangeStart + Math.min(buffer.limit(), rangeStop));
+            buf.put(src);
+        }
     }
 
     /**
@@ -119,22 +178,60 @@ public class NSData extends NSObject {
      * @return The Base64 encoded data as a <code>String</code>.
      */
     public String getBase64EncodedData() {
-        return Base64.encodeBytes(bytes);
+        byte[] bytes = this.bytes;
+        if (bytes != null) {
+            return Base64.encodeBytes(bytes);
+        }
+        //encode the view directly instead of copying it first
+        CharBuffer encoded = CharBuffer.allocate((buffer.limit() + 2) / 3 * 4);
+        Base64.encode(buffer.duplicate(), encoded);
+        return new String(encoded.array());
     }
 
     public void setBytes(byte[] bytes) {
         this.bytes = bytes;
+        buffer = null;
+    }
+
+    /**
+     * Copies the data of the view into a new array.
+     *
+     * @return The copied data.
+     */
+    private byte[] copyBytes() {
+        byte[] copy = new byte[buffer.limit()];
+        buffer.duplicate().get(copy);
+        return copy;
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj.getClass().equals(getClass()) && Arrays.equals(((NSData) obj).bytes, bytes);
+        if (!obj.getClass().equals(getClass())) {
+            return false;
+        }
+        NSData other = (NSData) obj;
+        byte[] bytes = this.bytes;
+        byte[] otherBytes = other.bytes;
+        if (bytes != null && otherBytes != null) {
+            return Arrays.equals(otherBytes, bytes);
+        }
+        return getByteBuffer().equals(other.getByteBuffer());
     }
 
     @Override
     public int hashCode() {
         int hash = 5;
-        hash = 67 * hash + Arrays.hashCode(this.bytes);
+        byte[] bytes = this.bytes;
+        if (bytes != null) {
+            hash = 67 * hash + Arrays.hashCode(bytes);
+        } else {
+            //same as Arrays.hashCode
+            int dataHash = 1;
+            for (int i = 0; i < buffer.limit(); i++) {
+                dataHash = 31 * dataHash + buffer.get(i);
+            }
+            hash = 67 * hash + dataHash;
+        }
         return hash;
     }
 
@@ -155,8 +252,14 @@ public class NSData extends NSObject {
 
     @Override
     void toBinary(BinaryPropertyListWriter out) throws IOException {
-        out.writeIntHeader(0x4, bytes.length);
-        out.write(bytes);
+        byte[] bytes = this.bytes;
+        if (bytes != null) {
+            out.writeIntHeader(0x4, bytes.length);
+            out.write(bytes);
+        } else {
+            out.writeIntHeader(0x4, buffer.limit());
+            out.write(buffer.duplicate());
+        }
     }
 
     @Override
@@ -164,15 +267,17 @@ public class NSData extends NSObject {
         indent(ascii, level);
         ascii.append(ASCIIPropertyListParser.DATA_BEGIN_TOKEN);
         int indexOfLastNewLine = ascii.lastIndexOf(NEWLINE);
-        for (int i = 0; i < bytes.length; i++) {
-            int b = bytes[i] & 0xFF;
+        ByteBuffer data = getByteBuffer();
+        int length = data.remaining();
+        for (int i = 0; i < length; i++) {
+            int b = data.get() & 0xFF;
             if (b < 16)
                 ascii.append("0");
             ascii.append(Integer.toHexString(b));
             if (ascii.length() - indexOfLastNewLine > ASCII_LINE_LENGTH) {
                 ascii.append(NEWLINE);
                 indexOfLastNewLine = ascii.length();
-            } else if ((i + 1) % 2 == 0 && i != bytes.length - 1) {
+            } else if ((i + 1) % 2 == 0 && i != length - 1) {
                 ascii.append(" ");
             }
         }
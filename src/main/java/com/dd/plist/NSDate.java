@@ -24,6 +24,7 @@
 package com.dd.plist;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -97,8 +98,43 @@ public class NSDate extends NSObject {
      * @param bytes The date bytes
      */
     public NSDate(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Creates a date from its binary representation.
+     *
+     * @param bytes      The byte array containing the date bytes.
+     * @param startIndex The index of the first date byte.
+     * @param endIndex   The index after the last date byte.
+     */
+    public NSDate(byte[] bytes, int startIndex, int endIndex) {
+        //dates are 8 byte big-endian double, seconds since the epoch
+        date = new Date(EPOCH + (long) (1000 * BinaryPropertyListParser.parseDouble(bytes, startIndex, endIndex)));
+    }
+
+    /**
+     * Creates a date from its binary representation.
+     *
+     * @param buffer     The byte buffer containing the date bytes.
+     * @param startIndex The index of the first date byte.
+     * @param endIndex   The index after the last date byte.
+     */
+    public NSDate(ByteBuffer buffer, int startIndex, int endIndex) {
+        date = parseBinaryDate(buffer, startIndex, endIndex);
+    }
+
+    /**
+     * Creates a Java Date object from the binary representation of a date.
+     *
+     * @param buffer     The byte buffer containing the date bytes.
+     * @param startIndex The index of the first date byte.
+     * @param endIndex   The index after the last date byte.
+     * @return The date.
+     */
+    static Date parseBinaryDate(ByteBuffer buffer, int startIndex, int endIndex) {
         //dates are 8 byte big-endian double, seconds since the epoch
-        date = new Date(EPOCH + (long) (1000 * BinaryPropertyListParser.parseDouble(bytes)));
+        return new Date(EPOCH + (long) (1000 * BinaryPropertyListParser.parseDouble(buffer, startIndex, endIndex)));
     }
 
     /**
@@ -48,6 +48,20 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
 
     private HashMap<String, NSObject> dict;
 
+    /**
+     * The binary property list from which the not yet parsed values of this dictionary are read.
+     * This is only set for dictionaries that were parsed lazily.
+     *
+     * @see BinaryPropertyListParser#parseLazily(java.nio.ByteBuffer)
+     */
+    private BinaryPropertyListParser parser;
+    /**
+     * The object references of the values that have not been parsed yet, by key.
+     * Values are parsed while holding the lock of this dictionary, so that a lazily parsed
+     * dictionary can be read by several threads.
+     */
+    private volatile HashMap<String, Integer> objectRefs;
+
     /**
      * Creates a new empty NSDictionary.
      */
@@ -64,9 +78,67 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return The hashmap which is used by this dictionary to store its contents.
      */
     public HashMap<String, NSObject> getHashMap() {
+        resolveAll();
         return dict;
     }
 
+    /**
+     * Puts a key into this dictionary whose value will be parsed from a binary property list
+     * when it is accessed for the first time.
+     *
+     * @param key       The key.
+     * @param objectRef The object reference of the value.
+     * @param parser    The parser of the binary property list.
+     */
+    void putUnresolved(String key, int objectRef, BinaryPropertyListParser parser) {
+        if (objectRefs == null) {
+            objectRefs = new HashMap<String, Integer>();
+            this.parser = parser;
+        }
+        dict.put(key, null);
+        objectRefs.put(key, objectRef);
+    }
+
+    /**
+     * Parses the value for the given key if it has not been parsed yet.
+     *
+     * @param key The key.
+     */
+    private void resolve(Object key) {
+        if (objectRefs != null) {
+            synchronized (this) {
+                HashMap<String, Integer> refs = objectRefs;
+                if (refs != null) {
+                    Integer objectRef = refs.get(key);
+                    if (objectRef != null && dict.containsKey(key)) {
+                        dict.put((String) key, parser.parseLazyObject(objectRef));
+                    }
+                    refs.remove(key);
+                    if (refs.isEmpty()) {
+                        parser = null;
+                        objectRefs = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses all values that have not been parsed yet.
+     */
+    private void resolveAll() {
+        if (objectRefs != null) {
+            synchronized (this) {
+                HashMap<String, Integer> refs = objectRefs;
+                if (refs != null) {
+                    for (String key : refs.keySet().toArray(new String[refs.size()])) {
+                        resolve(key);
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * Gets the NSObject stored for the given key.
      *
@@ -74,6 +146,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return The object.
      */
     public NSObject objectForKey(String key) {
+        resolve(key);
         return dict.get(key);
     }
 
@@ -110,7 +183,8 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
 	 * @see java.util.Map#containsValue(java.lang.Object)
 	 */
     public boolean containsValue(Object value) {
-        NSObject wrap = NSObject.wrap(value);
+        NSObject wrap = value != null ? NSObject.wrap(value) : null;
+        resolveAll();
         return dict.containsValue(wrap);
     }
 
@@ -120,6 +194,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
 	 * @see java.util.Map#get(java.lang.Object)
 	 */
     public NSObject get(Object key) {
+        resolve(key);
         return dict.get(key);
     }
 
@@ -145,6 +220,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      *         or null, if no value was associated to it.
      */
     public NSObject put(String key, NSObject obj) {
+        resolve(key);
         return dict.put(key, obj);
     }
 
@@ -197,6 +273,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return the value previously associated to the given key.
      */
     public NSObject remove(String key) {
+        resolve(key);
         return dict.remove(key);
     }
 
@@ -206,6 +283,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
 	 * @see java.util.Map#remove(java.lang.Object)
 	 */
     public NSObject remove(Object key) {
+        resolve(key);
         return dict.remove(key);
     }
 
@@ -214,7 +292,11 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @see java.util.Map#clear()
      */
     public void clear() {
-        dict.clear();
+        synchronized (this) {
+            dict.clear();
+            objectRefs = null;
+            parser = null;
+        }
     }
 
     /*
@@ -232,6 +314,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @see java.util.Map#values()
      */
     public Collection<NSObject> values() {
+        resolveAll();
         return dict.values();
     }
 
@@ -241,6 +324,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @see java.util.Map#entrySet()
      */
     public Set<Entry<String, NSObject>> entrySet() {
+        resolveAll();
         return dict.entrySet();
     }
 
@@ -261,6 +345,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return Whether the key is contained in this dictionary.
      */
     public boolean containsValue(NSObject val) {
+        resolveAll();
         return dict.containsValue(val);
     }
 
@@ -271,8 +356,9 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return Whether the key is contained in this dictionary.
      */
     public boolean containsValue(String val) {
+        resolveAll();
         for (NSObject o : dict.values()) {
-            if (o.getClass().equals(NSString.class)) {
+            if (o != null && o.getClass().equals(NSString.class)) {
                 NSString str = (NSString) o;
                 if (str.getContent().equals(val))
                     return true;
@@ -288,8 +374,9 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return Whether the key is contained in this dictionary.
      */
     public boolean containsValue(long val) {
+        resolveAll();
         for (NSObject o : dict.values()) {
-            if (o.getClass().equals(NSNumber.class)) {
+            if (o != null && o.getClass().equals(NSNumber.class)) {
                 NSNumber num = (NSNumber) o;
                 if (num.isInteger() && num.intValue() == val)
                     return true;
@@ -305,8 +392,9 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return Whether the key is contained in this dictionary.
      */
     public boolean containsValue(double val) {
+        resolveAll();
         for (NSObject o : dict.values()) {
-            if (o.getClass().equals(NSNumber.class)) {
+            if (o != null && o.getClass().equals(NSNumber.class)) {
                 NSNumber num = (NSNumber) o;
                 if (num.isReal() && num.doubleValue() == val)
                     return true;
@@ -322,8 +410,9 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return Whether the key is contained in this dictionary.
      */
     public boolean containsValue(boolean val) {
+        resolveAll();
         for (NSObject o : dict.values()) {
-            if (o.getClass().equals(NSNumber.class)) {
+            if (o != null && o.getClass().equals(NSNumber.class)) {
                 NSNumber num = (NSNumber) o;
                 if (num.isBoolean() && num.boolValue() == val)
                     return true;
@@ -339,8 +428,9 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return Whether the key is contained in this dictionary.
      */
     public boolean containsValue(Date val) {
+        resolveAll();
         for (NSObject o : dict.values()) {
-            if (o.getClass().equals(NSDate.class)) {
+            if (o != null && o.getClass().equals(NSDate.class)) {
                 NSDate dat = (NSDate) o;
                 if (dat.getDate().equals(val))
                     return true;
@@ -356,8 +446,9 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
      * @return Whether the key is contained in this dictionary.
      */
     public boolean containsValue(byte[] val) {
+        resolveAll();
         for (NSObject o : dict.values()) {
-            if (o.getClass().equals(NSData.class)) {
+            if (o != null && o.getClass().equals(NSData.class)) {
                 NSData dat = (NSData) o;
                 if (Arrays.equals(dat.bytes(), val))
                     return true;
@@ -377,7 +468,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
 
     @Override
     public boolean equals(Object obj) {
-        return (obj.getClass().equals(this.getClass()) && ((NSDictionary) obj).dict.equals(dict));
+        return (obj != null && obj.getClass().equals(this.getClass()) && ((NSDictionary) obj).getHashMap().equals(getHashMap()));
     }
 
     /**
@@ -392,7 +483,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
     @Override
     public int hashCode() {
         int hash = 7;
-        hash = 83 * hash + (this.dict != null ? this.dict.hashCode() : 0);
+        hash = 83 * hash + (this.dict != null ? getHashMap().hashCode() : 0);
         return hash;
     }
 
@@ -416,6 +507,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
             }
             xml.append("</key>");
             xml.append(NSObject.NEWLINE);
+            checkTextEntry(val);
             val.toXML(xml, level + 1);
             xml.append(NSObject.NEWLINE);
         }
@@ -423,21 +515,13 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
         xml.append("</dict>");
     }
 
-    @Override
-    void assignIDs(BinaryPropertyListWriter out) {
-        super.assignIDs(out);
-        for (Map.Entry<String, NSObject> entry : dict.entrySet()) {
-            new NSString(entry.getKey()).assignIDs(out);
-            entry.getValue().assignIDs(out);
-        }
-    }
-
     @Override
     void toBinary(BinaryPropertyListWriter out) throws IOException {
+        resolveAll();
         out.writeIntHeader(0xD, dict.size());
         Set<Map.Entry<String, NSObject>> entries = dict.entrySet();
         for (Map.Entry<String, NSObject> entry : entries) {
-            out.writeID(out.getID(new NSString(entry.getKey())));
+            out.writeID(out.getKeyID(entry.getKey()));
         }
         for (Map.Entry<String, NSObject> entry : entries) {
             out.writeID(out.getID(entry.getValue()));
@@ -488,6 +572,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
             ascii.append("\"");
             ascii.append(NSString.escapeStringForASCII(key));
             ascii.append("\" =");
+            checkTextEntry(val);
             Class<?> objClass = val.getClass();
             if (objClass.equals(NSDictionary.class) || objClass.equals(NSArray.class) || objClass.equals(NSData.class)) {
                 ascii.append(NEWLINE);
@@ -516,6 +601,7 @@ public class NSDictionary extends NSObject  implements Map<String, NSObject> {
             ascii.append("\"");
             ascii.append(NSString.escapeStringForASCII(key));
             ascii.append("\" =");
+            checkTextEntry(val);
             Class<?> objClass = val.getClass();
             if (objClass.equals(NSDictionary.class) || objClass.equals(NSArray.class) || objClass.equals(NSData.class)) {
                 ascii.append(NEWLINE);
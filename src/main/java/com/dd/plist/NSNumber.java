@@ -24,6 +24,7 @@
 package com.dd.plist;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * A number whose value is either an integer, a real number or boolean.
@@ -68,13 +69,55 @@ public class NSNumber extends NSObject implements Comparable<Object> {
      * @see #REAL
      */
     public NSNumber(byte[] bytes, int type) {
+        this(bytes, 0, bytes.length, type);
+    }
+
+    /**
+     * Parses integers and real numbers from their binary representation.
+     *
+     * @param bytes      The byte array containing the binary representation.
+     * @param startIndex The index of the first byte of the binary representation.
+     * @param endIndex   The index after the last byte of the binary representation.
+     * @param type       The type of number
+     * @see #INTEGER
+     * @see #REAL
+     */
+    public NSNumber(byte[] bytes, int startIndex, int endIndex, int type) {
+        switch (type) {
+            case INTEGER: {
+                doubleValue = longValue = BinaryPropertyListParser.parseLong(bytes, startIndex, endIndex);
+                break;
+            }
+            case REAL: {
+                doubleValue = BinaryPropertyListParser.parseDouble(bytes, startIndex, endIndex);
+                longValue = Math.round(doubleValue);
+                break;
+            }
+            default: {
+                throw new IllegalArgumentException("Type argument is not valid.");
+            }
+        }
+        this.type = type;
+    }
+
+    /**
+     * Parses integers and real numbers from their binary representation.
+     *
+     * @param buffer     The byte buffer containing the binary representation.
+     * @param startIndex The index of the first byte of the binary representation.
+     * @param endIndex   The index after the last byte of the binary representation.
+     * @param type       The type of number
+     * @see #INTEGER
+     * @see #REAL
+     */
+    public NSNumber(ByteBuffer buffer, int startIndex, int endIndex, int type) {
         switch (type) {
             case INTEGER: {
-                doubleValue = longValue = BinaryPropertyListParser.parseLong(bytes);
+                doubleValue = longValue = BinaryPropertyListParser.parseLong(buffer, startIndex, endIndex);
                 break;
             }
             case REAL: {
-                doubleValue = BinaryPropertyListParser.parseDouble(bytes);
+                doubleValue = BinaryPropertyListParser.parseDouble(buffer, startIndex, endIndex);
                 longValue = Math.round(doubleValue);
                 break;
             }
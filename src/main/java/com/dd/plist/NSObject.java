@@ -64,15 +64,6 @@ public abstract class NSObject {
      */
     abstract void toXML(StringBuilder xml, int level);
 
-    /**
-     * Assigns IDs to all the objects in this NSObject subtree.
-     *
-     * @param out The writer object that handles the binary serialization.
-     */
-    void assignIDs(BinaryPropertyListWriter out) {
-        out.assignID(this);
-    }
-
     /**
      * Generates the binary representation of the object.
      *
@@ -117,6 +108,30 @@ public abstract class NSObject {
      */
     protected abstract void toASCIIGnuStep(StringBuilder ascii, int level);
 
+    /**
+     * Checks that an entry of an array, set or dictionary can be written to an XML or ASCII property list.
+     * Null entries, which are read from binary property lists v1.0, have no representation in these formats.
+     *
+     * @param obj The entry.
+     * @throws UnsupportedOperationException If the entry is <code>null</code>.
+     */
+    static void checkTextEntry(NSObject obj) {
+        if (obj == null) {
+            throw new UnsupportedOperationException("A null value can only be stored in a binary property list, not in an XML or ASCII property list.");
+        }
+    }
+
+    /**
+     * Checks whether two entries of an array, set or dictionary are equal, either of them may be <code>null</code>.
+     *
+     * @param a The first entry.
+     * @param b The second entry.
+     * @return Whether both are <code>null</code> or equal.
+     */
+    static boolean entriesEqual(NSObject a, NSObject b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
     /**
      * Helper method that adds correct identation to the xml output.
      * Calling this method will add <code>level</code> number of tab characters
@@ -374,14 +389,15 @@ public abstract class NSObject {
             NSObject[] arrayA = ((NSArray)this).getArray();
             Object[] arrayB = new Object[arrayA.length];
             for(int i = 0; i < arrayA.length; i++) {
-                arrayB[i] = arrayA[i].toJavaObject();
+                arrayB[i] = arrayA[i] != null ? arrayA[i].toJavaObject() : null;
             }
             return arrayB;
         } else if (this instanceof NSDictionary) {
             HashMap<String, NSObject> hashMapA = ((NSDictionary)this).getHashMap();
             HashMap<String, Object> hashMapB = new HashMap<String, Object>(hashMapA.size());
             for(String key:hashMapA.keySet()) {
-                hashMapB.put(key, hashMapA.get(key).toJavaObject());
+                NSObject value = hashMapA.get(key);
+                hashMapB.put(key, value != null ? value.toJavaObject() : null);
             }
             return hashMapB;
         } else if(this instanceof NSSet) {
@@ -393,7 +409,7 @@ public abstract class NSObject {
                 setB = new TreeSet<Object>();
             }
             for(NSObject o:setA) {
-                setB.add(o.toJavaObject());
+                setB.add(o != null ? o.toJavaObject() : null);
             }
             return setB;
         } else if(this instanceof NSNumber) {
@@ -31,7 +31,8 @@ import java.util.*;
  * This implementation uses a <code>LinkedHashSet</code> or <code>TreeSet</code>as the underlying
  * data structure.
  * <p/>
- * <b>Warning:</b> Sets cannot yet be used for saving in binary property lists, as binary property list format v1+ is required to save them.
+ * Sets are saved in binary property lists with the set object markers of the format v1.0,
+ * ordered sets as ordered sets. XML and ASCII property lists have no sets, there sets are saved as arrays.
  *
  * @author Daniel Dreibrodt
  * @see LinkedHashSet
@@ -152,7 +153,7 @@ public class NSSet extends NSObject {
      */
     public synchronized NSObject member(NSObject obj) {
         for (NSObject o : set) {
-            if (o.equals(obj))
+            if (entriesEqual(o, obj))
                 return o;
         }
         return null;
@@ -251,6 +252,7 @@ public class NSSet extends NSObject {
         xml.append("<array>");
         xml.append(NSObject.NEWLINE);
         for (NSObject o : set) {
+            checkTextEntry(o);
             o.toXML(xml, level + 1);
             xml.append(NSObject.NEWLINE);
         }
@@ -258,12 +260,13 @@ public class NSSet extends NSObject {
         xml.append("</array>");
     }
 
-    @Override
-    void assignIDs(BinaryPropertyListWriter out) {
-        super.assignIDs(out);
-        for (NSObject obj : set) {
-            obj.assignIDs(out);
-        }
+    /**
+     * Checks whether this set is ordered, then it is stored as an ordered set in binary property lists.
+     *
+     * @return Whether the set is ordered.
+     */
+    boolean isOrdered() {
+        return ordered;
     }
 
     @Override
@@ -293,6 +296,7 @@ public class NSSet extends NSObject {
         ascii.append(ASCIIPropertyListParser.ARRAY_BEGIN_TOKEN);
         int indexOfLastNewLine = ascii.lastIndexOf(NEWLINE);
         for (int i = 0; i < array.length; i++) {
+            checkTextEntry(array[i]);
             Class<?> objClass = array[i].getClass();
             if ((objClass.equals(NSDictionary.class) || objClass.equals(NSArray.class) || objClass.equals(NSData.class))
                     && indexOfLastNewLine != ascii.length()) {
@@ -331,6 +335,7 @@ public class NSSet extends NSObject {
         ascii.append(ASCIIPropertyListParser.ARRAY_BEGIN_TOKEN);
         int indexOfLastNewLine = ascii.lastIndexOf(NEWLINE);
         for (int i = 0; i < array.length; i++) {
+            checkTextEntry(array[i]);
             Class<?> objClass = array[i].getClass();
             if ((objClass.equals(NSDictionary.class) || objClass.equals(NSArray.class) || objClass.equals(NSData.class))
                     && indexOfLastNewLine != ascii.length()) {
@@ -24,10 +24,6 @@ package com.dd.plist;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
 
 /**
  * A NSString contains a string.
@@ -134,29 +130,33 @@ public class NSString extends NSObject implements Comparable<Object> {
         return content;
     }
 
-    private static CharsetEncoder asciiEncoder, utf16beEncoder, utf8Encoder;
+    /**
+     * Checks that a string can be encoded in UTF-8, i.e. that every surrogate character
+     * is part of a surrogate pair. Any other string is encoded and decoded unchanged,
+     * so the check replaces the round trip through a shared encoder and needs no lock.
+     *
+     * @param str The string.
+     * @throws RuntimeException If the string contains an unpaired surrogate.
+     */
+    private static void checkUTF8(String str) {
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+                i++;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                throw new RuntimeException("Could not encode the NSString into UTF-8: unpaired surrogate at index " + i);
+            }
+        }
+    }
 
     @Override
     void toXML(StringBuilder xml, int level) {
         indent(xml, level);
         xml.append("<string>");
 
-        //Make sure that the string is encoded in UTF-8 for the XML output
-        synchronized (NSString.class) {
-            if (utf8Encoder == null)
-                utf8Encoder = Charset.forName("UTF-8").newEncoder();
-            else
-                utf8Encoder.reset();
-
-            try {
-                ByteBuffer byteBuf = utf8Encoder.encode(CharBuffer.wrap(content));
-                byte[] bytes = new byte[byteBuf.remaining()];
-                byteBuf.get(bytes);
-                content = new String(bytes, "UTF-8");
-            } catch (Exception ex) {
-                throw new RuntimeException("Could not encode the NSString into UTF-8: " + String.valueOf(ex.getMessage()));
-            }
-        }
+        //Make sure that the string can be encoded in UTF-8 for the XML output
+        checkUTF8(content);
 
         //According to http://www.w3.org/TR/REC-xml/#syntax node values must not
         //contain the characters < or &. Also the > character should be escaped.
@@ -173,32 +173,7 @@ public class NSString extends NSObject implements Comparable<Object> {
 
     @Override
     public void toBinary(BinaryPropertyListWriter out) throws IOException {
-        CharBuffer charBuf = CharBuffer.wrap(content);
-        int kind;
-        ByteBuffer byteBuf;
-        synchronized (NSString.class) {
-            if (asciiEncoder == null)
-                asciiEncoder = Charset.forName("ASCII").newEncoder();
-            else
-                asciiEncoder.reset();
-
-            if (asciiEncoder.canEncode(charBuf)) {
-                kind = 0x5; // standard ASCII
-                byteBuf = asciiEncoder.encode(charBuf);
-            } else {
-                if (utf16beEncoder == null)
-                    utf16beEncoder = Charset.forName("UTF-16BE").newEncoder();
-                else
-                    utf16beEncoder.reset();
-
-                kind = 0x6; // UTF-16-BE
-                byteBuf = utf16beEncoder.encode(charBuf);
-            }
-        }
-        byte[] bytes = new byte[byteBuf.remaining()];
-        byteBuf.get(bytes);
-        out.writeIntHeader(kind, content.length());
-        out.write(bytes);
+        out.writeString(content);
     }
 
     @Override
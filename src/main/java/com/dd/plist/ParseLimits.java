@@ -0,0 +1,148 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 The dd-plist contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+/**
+ * Limits the resources a binary property list may claim while it is parsed.
+ * The limits are checked against the values stored in the trailer and in the
+ * object headers before anything is allocated, so that oversized or malicious
+ * property lists are rejected quickly. When a limit is exceeded a
+ * PropertyListFormatException is thrown.
+ * <p/>
+ * By default nothing is limited except by the size of the property list itself:
+ * lengths and offsets stored in a property list must always lie within its data.
+ * <p/>
+ * XML property lists are only checked against the maximum nesting depth and
+ * the maximum container size.
+ *
+ * @see BinaryPropertyListParser#parse(java.nio.ByteBuffer, ParseLimits)
+ * @see XMLPropertyListParser#parse(java.io.InputStream, ParseLimits)
+ */
+public class ParseLimits {
+
+    private long maxBytes = Long.MAX_VALUE;
+    private int maxObjects = Integer.MAX_VALUE;
+    private int maxContainerSize = Integer.MAX_VALUE;
+    private int maxDepth = Integer.MAX_VALUE;
+    private int maxStringLength = Integer.MAX_VALUE;
+
+    /**
+     * Creates a new set of limits that does not limit anything.
+     */
+    public ParseLimits() {
+        /** empty **/
+    }
+
+    /**
+     * Gets the maximum size of a property list in bytes.
+     *
+     * @return The maximum number of bytes.
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum size of a property list in bytes.
+     *
+     * @param maxBytes The maximum number of bytes.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the maximum number of objects a property list may contain.
+     *
+     * @return The maximum number of objects.
+     */
+    public int getMaxObjects() {
+        return maxObjects;
+    }
+
+    /**
+     * Sets the maximum number of objects a property list may contain.
+     *
+     * @param maxObjects The maximum number of objects.
+     */
+    public void setMaxObjects(int maxObjects) {
+        this.maxObjects = maxObjects;
+    }
+
+    /**
+     * Gets the maximum number of entries of a single array, set or dictionary.
+     *
+     * @return The maximum number of entries.
+     */
+    public int getMaxContainerSize() {
+        return maxContainerSize;
+    }
+
+    /**
+     * Sets the maximum number of entries of a single array, set or dictionary.
+     *
+     * @param maxContainerSize The maximum number of entries.
+     */
+    public void setMaxContainerSize(int maxContainerSize) {
+        this.maxContainerSize = maxContainerSize;
+    }
+
+    /**
+     * Gets the maximum nesting depth of arrays, sets and dictionaries.
+     * The root object has a depth of 1 if it is a container.
+     *
+     * @return The maximum nesting depth.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets the maximum nesting depth of arrays, sets and dictionaries.
+     * When a property list is parsed lazily, only the depth of the containers
+     * parsed at once can be checked.
+     *
+     * @param maxDepth The maximum nesting depth.
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Gets the maximum length of a single string in characters.
+     *
+     * @return The maximum string length.
+     */
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    /**
+     * Sets the maximum length of a single string in characters.
+     *
+     * @param maxStringLength The maximum string length.
+     */
+    public void setMaxStringLength(int maxStringLength) {
+        this.maxStringLength = maxStringLength;
+    }
+}
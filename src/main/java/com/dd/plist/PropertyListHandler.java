@@ -0,0 +1,142 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 The dd-plist contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.dd.plist;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Receives the contents of a property list as a stream of events instead of
+ * as a tree of NSObjects. The objects of the property list are reported in
+ * document order: after <code>startDictionary</code> each entry is reported
+ * by a call to <code>key</code> followed by the events for its value,
+ * after <code>startArray</code> and <code>startSet</code> the events for each
+ * element follow. Every start event is matched by an end event.
+ * <p/>
+ * Objects that are referenced multiple times inside a binary property list are
+ * reported each time they are referenced.
+ *
+ * @see BinaryPropertyListParser#parse(java.nio.ByteBuffer, PropertyListHandler)
+ */
+public interface PropertyListHandler {
+
+    /**
+     * Called at the beginning of a dictionary.
+     *
+     * @param count The number of entries in the dictionary.
+     */
+    void startDictionary(int count);
+
+    /**
+     * Called for the key of each dictionary entry, before the entry's value is reported.
+     *
+     * @param key The key.
+     */
+    void key(String key);
+
+    /**
+     * Called at the end of a dictionary.
+     */
+    void endDictionary();
+
+    /**
+     * Called at the beginning of an array.
+     *
+     * @param count The number of elements in the array.
+     */
+    void startArray(int count);
+
+    /**
+     * Called at the end of an array.
+     */
+    void endArray();
+
+    /**
+     * Called at the beginning of a set.
+     *
+     * @param count   The number of elements in the set.
+     * @param ordered Whether the set is ordered.
+     */
+    void startSet(int count, boolean ordered);
+
+    /**
+     * Called at the end of a set.
+     */
+    void endSet();
+
+    /**
+     * Called for a string.
+     *
+     * @param value The string.
+     */
+    void string(String value);
+
+    /**
+     * Called for an integer number.
+     *
+     * @param value The number.
+     */
+    void integer(long value);
+
+    /**
+     * Called for a real number.
+     *
+     * @param value The number.
+     */
+    void real(double value);
+
+    /**
+     * Called for a boolean value.
+     *
+     * @param value The value.
+     */
+    void bool(boolean value);
+
+    /**
+     * Called for a date.
+     *
+     * @param value The date.
+     */
+    void date(Date value);
+
+    /**
+     * Called for data. The given buffer is a read-only view of the property list's data
+     * and is only guaranteed to be valid until this method returns.
+     *
+     * @param value A buffer containing the data between its position and its limit.
+     */
+    void data(ByteBuffer value);
+
+    /**
+     * Called for a UID.
+     *
+     * @param value The bytes of the UID.
+     */
+    void uid(byte[] value);
+
+    /**
+     * Called for null objects and objects of unknown type.
+     */
+    void nullValue();
+}
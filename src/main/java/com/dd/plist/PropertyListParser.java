@@ -25,7 +25,6 @@ package com.dd.plist;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -34,6 +33,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
 import java.text.ParseException;
 
 /**
@@ -53,6 +53,15 @@ public class PropertyListParser {
         /** empty **/
     }
 
+    /**
+     * The minimum size of the buffer into which streams are read.
+     */
+    private static final int CHUNK_SIZE = 8192;
+    // the largest initial array, larger streams are read by growing the array as the data arrives
+    private static final int MAX_INITIAL_SIZE = 4 * 1024 * 1024;
+    // the largest array most VMs can allocate
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
     /**
      * Reads all bytes from an InputStream and stores them in an array, up to
      * a maximum count.
@@ -61,14 +70,57 @@ public class PropertyListParser {
      * @param max The maximum number of bytes to read.
      */
     protected static byte[] readAll(InputStream in, int max) throws IOException {
-        ByteArrayOutputStream buf = new ByteArrayOutputStream();
-        while (max > 0) {
-            int n = in.read();
+        ByteBuffer buf = readBuffer(in, max, 0, null);
+        if (buf.limit() == buf.array().length) {
+            return buf.array();
+        }
+        byte[] bytes = new byte[buf.limit()];
+        System.arraycopy(buf.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Reads all bytes from an InputStream into a buffer, up to a maximum count.
+     * The stream is read in chunks into an array which is initially sized after the
+     * number of bytes available from the stream or the expected size, and which is
+     * grown as needed. As these sizes are only hints, the initial size is capped at a few megabytes.
+     *
+     * @param in           The InputStream pointing to the data that should be stored in the buffer.
+     * @param max          The maximum number of bytes to read.
+     * @param expectedSize The number of bytes the stream is expected to contain, or 0 if unknown.
+     * @param magic        The characters the data has to start with, or <code>null</code>. They are checked as
+     *                     soon as they have been read, so that a stream of wrong data is not read completely.
+     * @return A buffer wrapping the bytes that were read. Its backing array may be larger than the data.
+     * @throws IllegalArgumentException If the data does not start with the given characters.
+     * @throws IOException If the stream contains more data than fits into an array.
+     */
+    static ByteBuffer readBuffer(InputStream in, int max, int expectedSize, String magic) throws IOException {
+        int size = Math.max(Math.max(in.available(), expectedSize), CHUNK_SIZE);
+        byte[] buf = new byte[Math.min(Math.min(size, MAX_INITIAL_SIZE), max)];
+        int count = 0;
+        boolean checked = magic == null;
+        while (count < max) {
+            if (count == buf.length) {
+                if (count >= MAX_ARRAY_SIZE) {
+                    if (in.read() == -1) break; // EOF
+                    throw new IOException("The stream contains more than " + MAX_ARRAY_SIZE + " bytes, which do not fit into an array.");
+                }
+                byte[] grown = new byte[(int) Math.min(Math.min(2L * buf.length, max), MAX_ARRAY_SIZE)];
+                System.arraycopy(buf, 0, grown, 0, count);
+                buf = grown;
+            }
+            int n = in.read(buf, count, buf.length - count);
             if (n == -1) break; // EOF
-            buf.write(n);
-            max--;
+            count += n;
+            if (!checked && count >= magic.length()) {
+                String start = new String(buf, 0, magic.length());
+                if (!start.equals(magic)) {
+                    throw new IllegalArgumentException("The given data does not start with " + magic + ". Wrong magic bytes: " + start);
+                }
+                checked = true;
+            }
         }
-        return buf.toByteArray();
+        return ByteBuffer.wrap(buf, 0, count);
     }
 
     /**
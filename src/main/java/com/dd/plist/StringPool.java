@@ -0,0 +1,153 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 The dd-plist contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded pool of strings used to share equal strings between the property lists
+ * parsed by a BinaryPropertyListParser. Dictionary keys and short ASCII strings which
+ * occur in many property lists, e.g. the keys of Info.plist files, are then only kept
+ * in memory once. When the pool is full the least recently used string is removed.
+ * <p/>
+ * A pool can be used for a single property list or shared by several parses,
+ * also by parses running at the same time. The pool is divided into segments by the
+ * hash codes of the strings, each with its own lock and its own share of the maximum size,
+ * so that threads looking up different strings rarely wait for each other. The least
+ * recently used string is determined per segment.
+ *
+ * @see BinaryPropertyListParser#parse(java.nio.ByteBuffer, StringPool)
+ */
+public class StringPool {
+
+    /**
+     * The default maximum number of strings in a pool.
+     */
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * The default maximum length of strings, which are not dictionary keys, to be pooled.
+     */
+    public static final int DEFAULT_MAX_VALUE_LENGTH = 32;
+
+    /**
+     * The maximum number of segments, each of which is locked separately.
+     */
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final int maxValueLength;
+
+    /**
+     * Creates a new pool with the default size.
+     */
+    public StringPool() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_MAX_VALUE_LENGTH);
+    }
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maxSize        The maximum number of strings in the pool.
+     * @param maxValueLength The maximum length of strings, which are not dictionary keys, to be pooled.
+     */
+    public StringPool(int maxSize, int maxValueLength) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size of a string pool must be positive: " + maxSize);
+        }
+        this.maxValueLength = maxValueLength;
+        //a power of two, so that the segment is selected by the lower bits of the hash code
+        segments = new Segment[Integer.highestOneBit(Math.min(maxSize, MAX_SEGMENTS))];
+        for (int i = 0; i < segments.length; i++) {
+            //the maximum size is distributed evenly over the segments
+            segments[i] = new Segment(maxSize / segments.length + (i < maxSize % segments.length ? 1 : 0));
+        }
+    }
+
+    /**
+     * Gets the pooled instance of a dictionary key.
+     *
+     * @param key The key.
+     * @return The pooled string equal to the key.
+     */
+    public String intern(String key) {
+        int hash = key.hashCode();
+        Segment segment = segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+        synchronized (segment) {
+            String pooled = segment.get(key);
+            if (pooled == null) {
+                segment.put(key, key);
+                pooled = key;
+            }
+            return pooled;
+        }
+    }
+
+    /**
+     * Gets the pooled instance of a string value if it is short enough to be pooled.
+     *
+     * @param value The string.
+     * @return The pooled string equal to the given one, or the given string if it is too long to be pooled.
+     */
+    String internValue(String value) {
+        if (value.length() > maxValueLength) {
+            return value;
+        }
+        return intern(value);
+    }
+
+    /**
+     * Gets the number of strings in the pool.
+     *
+     * @return The number of pooled strings.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * A part of the pool with its own lock, which removes its least recently used string when it is full.
+     */
+    private static class Segment extends LinkedHashMap<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * plist - An open source library to parse and generate property lists
+ * Copyright (C) 2026 The dd-plist contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.dd.plist;
+
+/**
+ * The result of validating a binary property list. For an invalid property list
+ * it describes the first error that was found and where it was found.
+ *
+ * @see BinaryPropertyListParser#validate(java.nio.ByteBuffer)
+ */
+public class ValidationResult {
+
+    private String message;
+    private int offset;
+    private int object;
+
+    /**
+     * Creates a new validation result.
+     *
+     * @param message The description of the error, or <code>null</code> if the property list is valid.
+     * @param offset  The offset at which the error was found, or -1.
+     * @param object  The ID of the object containing the error, or -1.
+     */
+    public ValidationResult(String message, int offset, int object) {
+        this.message = message;
+        this.offset = offset;
+        this.object = object;
+    }
+
+    /**
+     * Checks whether the property list is valid.
+     *
+     * @return Whether no error was found.
+     */
+    public boolean isValid() {
+        return message == null;
+    }
+
+    /**
+     * Gets the description of the error.
+     *
+     * @return The error message, or <code>null</code> if the property list is valid.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Gets the offset at which the error was found. This is the offset of the invalid
+     * object or reference, of the offset table entry for invalid object offsets, or
+     * of the trailer when the trailer is invalid.
+     *
+     * @return The offset from the beginning of the property list, or -1 if the property list is valid.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the ID of the object containing the error.
+     *
+     * @return The object ID, or -1 if the error does not belong to an object.
+     */
+    public int getObject() {
+        return object;
+    }
+
+    @Override
+    public String toString() {
+        if (isValid()) {
+            return "valid";
+        }
+        return message + " (offset " + offset + (object >= 0 ? ", object #" + object : "") + ")";
+    }
+}
@@ -54,6 +54,8 @@ public class XMLPropertyListParser {
 
     private static DocumentBuilderFactory docBuilderFactory = null;
 
+    private static final ParseLimits DEFAULT_LIMITS = new ParseLimits();
+
     /**
      * Initialize the document builder factory so that it can be reuused and does not need to
      * be reinitialized for each new parsing.
@@ -99,11 +101,25 @@ public class XMLPropertyListParser {
      * @see javax.xml.parsers.DocumentBuilder#parse(java.io.File)
      */
     public static NSObject parse(File f) throws ParseException, IOException, PropertyListFormatException, SAXException, ParserConfigurationException {
+        return parse(f, DEFAULT_LIMITS);
+    }
+
+    /**
+     * Parses a XML property list file. Of the given limits only the maximum
+     * nesting depth and the maximum container size are checked.
+     *
+     * @param f      The XML property list file.
+     * @param limits The limits the property list has to satisfy.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws PropertyListFormatException When the property list exceeds the limits.
+     * @see javax.xml.parsers.DocumentBuilder#parse(java.io.File)
+     */
+    public static NSObject parse(File f, ParseLimits limits) throws ParseException, IOException, PropertyListFormatException, SAXException, ParserConfigurationException {
         DocumentBuilder docBuilder = getDocBuilder();
 
         Document doc = docBuilder.parse(f);
 
-        return parseDocument(doc);
+        return parseDocument(doc, limits);
     }
 
     /**
@@ -127,21 +143,36 @@ public class XMLPropertyListParser {
      * @see javax.xml.parsers.DocumentBuilder#parse(java.io.InputStream)
      */
     public static NSObject parse(InputStream is) throws ParserConfigurationException, IOException, SAXException, PropertyListFormatException, ParseException {
+        return parse(is, DEFAULT_LIMITS);
+    }
+
+    /**
+     * Parses a XML property list from an input stream. Of the given limits only
+     * the maximum nesting depth and the maximum container size are checked.
+     *
+     * @param is     The input stream pointing to the property list's data.
+     * @param limits The limits the property list has to satisfy.
+     * @return The root object of the property list. This is usally a NSDictionary but can also be a NSArray.
+     * @throws PropertyListFormatException When the property list exceeds the limits.
+     * @see javax.xml.parsers.DocumentBuilder#parse(java.io.InputStream)
+     */
+    public static NSObject parse(InputStream is, ParseLimits limits) throws ParserConfigurationException, IOException, SAXException, PropertyListFormatException, ParseException {
         DocumentBuilder docBuilder = getDocBuilder();
 
         Document doc = docBuilder.parse(is);
 
-        return parseDocument(doc);
+        return parseDocument(doc, limits);
     }
 
     /**
      * Parses the XML document by generating the appropriate NSObjects for each XML node.
      *
-     * @param doc The XML document.
+     * @param doc    The XML document.
+     * @param limits The limits the property list has to satisfy.
      * @return The root NSObject of the property list contained in the XML document.
      * @throws Exception If an error occured during parsing.
      */
-    private static NSObject parseDocument(Document doc) throws PropertyListFormatException, IOException, ParseException {
+    private static NSObject parseDocument(Document doc, ParseLimits limits) throws PropertyListFormatException, IOException, ParseException {
         DocumentType docType = doc.getDoctype();
         if (docType == null) {
             if (!doc.getDocumentElement().getNodeName().equals("plist")) {
@@ -168,38 +199,69 @@ public class XMLPropertyListParser {
             rootNode = doc.getDocumentElement();
         }
 
-        return parseObject(rootNode);
+        return parseObject(rootNode, limits);
     }
 
     /**
-     * Parses a node in the XML structure and returns the corresponding NSObject
+     * Parses a node in the XML structure and returns the corresponding NSObject.
+     * Nested dictionaries and arrays are parsed with an explicit stack instead of
+     * recursion, so the nesting depth is only restricted by the limits and not by
+     * the size of the thread's stack.
      *
-     * @param n The XML node.
+     * @param n      The XML node.
+     * @param limits The limits the property list has to satisfy.
      * @return The corresponding NSObject.
      * @throws Exception If an error occured during parsing the node.
      */
-    private static NSObject parseObject(Node n) throws ParseException, IOException {
-        String type = n.getNodeName();
-        if (type.equals("dict")) {
-            NSDictionary dict = new NSDictionary();
-            List<Node> children = filterElementNodes(n.getChildNodes());
-            for (int i = 0; i < children.size(); i += 2) {
-                Node key = children.get(i);
-                Node val = children.get(i + 1);
-
-                String keyString = getNodeTextContents(key);
-
-                dict.put(keyString, parseObject(val));
+    private static NSObject parseObject(Node n, ParseLimits limits) throws ParseException, IOException, PropertyListFormatException {
+        //the dictionaries and arrays whose children are being parsed, the innermost one last
+        List<Container> stack = new ArrayList<Container>();
+        while (true) {
+            NSObject result = null;
+            String type = n.getNodeName();
+            boolean container = type.equals("dict") || type.equals("array");
+            if (container) {
+                if (stack.size() >= limits.getMaxDepth()) {
+                    throw new PropertyListFormatException("The given XML property list is nested too deeply (the limit is " + limits.getMaxDepth() + ")");
+                }
+                List<Node> children = filterElementNodes(n.getChildNodes());
+                int size = type.equals("dict") ? children.size() / 2 : children.size();
+                if (size > limits.getMaxContainerSize()) {
+                    throw new PropertyListFormatException("The given XML property list contains a container with too many entries (" + size + ", the limit is " + limits.getMaxContainerSize() + ")");
+                }
+                stack.add(new Container(type.equals("dict") ? new NSDictionary() : new NSArray(children.size()), children));
+            } else {
+                result = parseValue(n);
+                if (stack.isEmpty()) {
+                    return result;
+                }
+                stack.get(stack.size() - 1).add(result);
             }
-            return dict;
-        } else if (type.equals("array")) {
-            List<Node> children = filterElementNodes(n.getChildNodes());
-            NSArray array = new NSArray(children.size());
-            for (int i = 0; i < children.size(); i++) {
-                array.setValue(i, parseObject(children.get(i)));
+            //continue with the next child, completing the containers whose children have all been parsed
+            Container top = stack.get(stack.size() - 1);
+            while (!top.hasNext()) {
+                stack.remove(stack.size() - 1);
+                if (stack.isEmpty()) {
+                    return top.object;
+                }
+                NSObject completed = top.object;
+                top = stack.get(stack.size() - 1);
+                top.add(completed);
             }
-            return array;
-        } else if (type.equals("true")) {
+            n = top.next();
+        }
+    }
+
+    /**
+     * Parses a node in the XML structure that is no dictionary or array.
+     *
+     * @param n The XML node.
+     * @return The corresponding NSObject.
+     * @throws Exception If an error occured during parsing the node.
+     */
+    private static NSObject parseValue(Node n) throws ParseException, IOException {
+        String type = n.getNodeName();
+        if (type.equals("true")) {
             return new NSNumber(true);
         } else if (type.equals("false")) {
             return new NSNumber(false);
@@ -217,6 +279,58 @@ public class XMLPropertyListParser {
         return null;
     }
 
+    /**
+     * A dictionary or array whose children are being parsed.
+     */
+    private static class Container {
+        private NSObject object;
+        private List<Node> children;
+        private int index;
+        private String key;
+
+        Container(NSObject object, List<Node> children) {
+            this.object = object;
+            this.children = children;
+        }
+
+        /**
+         * Checks whether there are children left to be parsed.
+         *
+         * @return Whether there is a next child.
+         */
+        boolean hasNext() {
+            return index < children.size();
+        }
+
+        /**
+         * Gets the next child to be parsed. For dictionaries the key preceding
+         * the child is remembered.
+         *
+         * @return The node of the next child.
+         */
+        Node next() {
+            if (object instanceof NSDictionary) {
+                key = getNodeTextContents(children.get(index));
+                index += 2;
+                return children.get(index - 1);
+            }
+            return children.get(index++);
+        }
+
+        /**
+         * Adds the last child that has been parsed.
+         *
+         * @param child The parsed child.
+         */
+        void add(NSObject child) {
+            if (object instanceof NSDictionary) {
+                ((NSDictionary) object).put(key, child);
+            } else {
+                ((NSArray) object).setValue(index - 1, child);
+            }
+        }
+    }
+
     /**
      * Returns all element nodes that are contained in a list of nodes.
      *
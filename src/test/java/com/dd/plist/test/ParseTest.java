@@ -4,8 +4,19 @@ import com.dd.plist.*;
 import junit.framework.TestCase;
 
 import javax.swing.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ParseTest extends TestCase {
 
@@ -49,29 +60,780 @@ public class ParseTest extends TestCase {
         assertTrue(x.equals(y));
     }
 
+    /**
+     * Test parsing binary property lists from (direct) byte buffers.
+     */
+    public static void testBinaryByteBuffer() throws Exception {
+        byte[] data = test1Binary();
+        ByteBuffer buf = ByteBuffer.allocateDirect(data.length + 3);
+        buf.put(new byte[3]);
+        buf.put(data);
+        buf.position(3);
+        //the property list starts at the position of the buffer, which is not moved
+        assertTrue(parseTest1().equals(BinaryPropertyListParser.parse(buf)));
+        assertTrue(buf.position() == 3);
+    }
+
+    /**
+     * Test lazily parsed binary property lists.
+     */
+    public static void testBinaryLazy() throws Exception {
+        NSDictionary y = (NSDictionary)BinaryPropertyListParser.parseLazily(ByteBuffer.wrap(test1Binary()));
+        assertTrue(((NSString)y.objectForKey("keyA")).toString().equals("valueA"));
+        NSArray a = (NSArray)y.objectForKey("array");
+        assertTrue(a.objectAtIndex(2).equals(new NSNumber(87)));
+
+        //several threads read the same lazily parsed tree
+        final NSDictionary big = new NSDictionary();
+        for (int i = 0; i < 2000; i++) {
+            big.put("key" + i, new NSArray(new NSString("value" + i), new NSNumber(i)));
+        }
+        final NSDictionary lazy = (NSDictionary)BinaryPropertyListParser.parseLazily(
+                ByteBuffer.wrap(BinaryPropertyListWriter.writeToArray(big)));
+        assertConcurrently(8, new Callable<Boolean>() {
+            public Boolean call() {
+                for (int i = 0; i < 2000; i++) {
+                    NSArray entry = (NSArray)lazy.objectForKey("key" + i);
+                    if (!entry.objectAtIndex(0).equals(new NSString("value" + i))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        assertTrue(big.equals(lazy));
+    }
+
+    /**
+     * Test path queries on binary property lists.
+     */
+    public static void testBinaryIndex() throws Exception {
+        BinaryPropertyListIndex index = BinaryPropertyListIndex.open(ByteBuffer.wrap(test1Binary()));
+        assertTrue(index.get("keyA").equals(new NSString("valueA")));
+        assertTrue(index.get("array/2").equals(new NSNumber(87)));
+        assertTrue(index.get("array/4") == null);
+        assertTrue(index.get("nokey") == null);
+        assertTrue(index.query("array/*").size() == 4);
+        assertTrue(index.getRoot().equals(parseTest1()));
+
+        //queries and the lazy parsing of their results may run in several threads
+        NSDictionary big = new NSDictionary();
+        for (int i = 0; i < 1000; i++) {
+            big.put("key" + i, new NSDictionary());
+            ((NSDictionary)big.objectForKey("key" + i)).put("value", i);
+        }
+        final BinaryPropertyListIndex bigIndex = BinaryPropertyListIndex.open(ByteBuffer.wrap(BinaryPropertyListWriter.writeToArray(big)));
+        final NSDictionary root = (NSDictionary)bigIndex.getRoot();
+        final AtomicInteger threads = new AtomicInteger();
+        assertConcurrently(8, new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                boolean useIndex = threads.getAndIncrement() % 2 == 0;
+                for (int i = 0; i < 1000; i++) {
+                    NSObject value = useIndex ? bigIndex.get("key" + i + "/value")
+                            : ((NSDictionary)root.objectForKey("key" + i)).objectForKey("value");
+                    if (!value.equals(new NSNumber(i))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+
+        //an object that cannot be parsed keeps failing for the same reason, not as a cyclic reference
+        byte[] broken = new byte[]{'b', 'p', 'l', 'i', 's', 't', '0', '0',
+                (byte)0xA2, 0x01, 0x02, //array
+                0x5F, 0x10, 0x64, 'a', //string claiming to contain 100 characters
+                0x10, 0x05, //integer
+                8, 11, 15, //offset table
+                0, 0, 0, 0, 0, 0, 1, 1, //trailer
+                0, 0, 0, 0, 0, 0, 0, 3,
+                0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 17};
+        BinaryPropertyListIndex brokenIndex = BinaryPropertyListIndex.open(ByteBuffer.wrap(broken));
+        for (int i = 0; i < 2; i++) {
+            try {
+                brokenIndex.get("0");
+                fail("An invalid string was parsed");
+            } catch (PropertyListFormatException ex) {
+                assertFalse(ex.getMessage().contains("cyclic"));
+            }
+        }
+        assertTrue(brokenIndex.get("1").equals(new NSNumber(5)));
+    }
+
+    /**
+     * Test reporting the contents of a binary property list to a handler
+     */
+    public static void testBinaryHandler() throws Exception {
+        NSDictionary x = parseTest1();
+        x.put("sets", new NSArray(new NSSet(true, new NSNumber(1)), new NSSet(false, new NSNumber(2)), null));
+        RecordingHandler handler = new RecordingHandler();
+        BinaryPropertyListParser.parse(ByteBuffer.wrap(BinaryPropertyListWriter.writeToArray(x)), handler);
+        assertEquals(0, handler.depth);
+        assertEquals(3, handler.maxDepth);
+        assertEquals(x.keySet(), new HashSet<String>(handler.keys));
+        assertEquals(87 + 1 + 2, handler.integerSum);
+        assertEquals(1, handler.orderedSets);
+        assertEquals(1, handler.unorderedSets);
+        assertEquals(1, handler.nullValues);
+
+        //objects of unknown types are rejected instead of being reported as null
+        byte[] unknown = new byte[]{'b', 'p', 'l', 'i', 's', 't', '0', '0',
+                (byte)0xA1, 0x01, //array
+                (byte)0x90, //object of the unused type 9
+                8, 10, //offset table
+                0, 0, 0, 0, 0, 0, 1, 1, //trailer
+                0, 0, 0, 0, 0, 0, 0, 2,
+                0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 11};
+        try {
+            BinaryPropertyListParser.parse(ByteBuffer.wrap(unknown), new RecordingHandler());
+            fail("An object of unknown type was reported");
+        } catch (PropertyListFormatException ex) {
+            //expected
+        }
+    }
+
+    /**
+     * Test parsing large binary property lists in parallel
+     */
+    public static void testBinaryParallel() throws Exception {
+        NSObject[] items = new NSObject[2 * BinaryPropertyListParser.PARALLEL_THRESHOLD];
+        for (int i = 0; i < items.length; i++) {
+            NSDictionary item = new NSDictionary();
+            item.put("index", i);
+            item.put("name", "item" + (i % 100));
+            items[i] = item;
+        }
+        NSArray a = new NSArray(items);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            NSArray b = (NSArray)BinaryPropertyListParser.parse(ByteBuffer.wrap(BinaryPropertyListWriter.writeToArray(a)), executor);
+            assertTrue(a.equals(b));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test decoding ASCII and UTF-16 strings from heap and direct buffers
+     */
+    public static void testBinaryStrings() throws Exception {
+        NSArray a = new NSArray(new NSString("ascii"), new NSString("\u00e4\u20ac\ud83d\ude00"), new NSString(""));
+        byte[] data = BinaryPropertyListWriter.writeToArray(a);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        direct.flip();
+        assertTrue(a.equals(BinaryPropertyListParser.parse(data)));
+        assertTrue(a.equals(BinaryPropertyListParser.parse(direct)));
+    }
+
+    /**
+     * Large data parsed from a byte buffer is a view of the buffer until its bytes are accessed
+     */
+    public static void testBinaryDataView() throws Exception {
+        byte[] bytes = new byte[100 * BinaryPropertyListParser.DATA_VIEW_THRESHOLD];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)i;
+        }
+        NSData x = new NSData(bytes);
+        byte[] data = BinaryPropertyListWriter.writeToArray(new NSArray(x));
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        NSData y = (NSData)((NSArray)BinaryPropertyListParser.parse(buf)).objectAtIndex(0);
+        assertTrue(y.length() == bytes.length);
+        assertTrue(x.equals(y) && y.equals(x));
+        assertTrue(x.hashCode() == y.hashCode());
+        //the view is serialized without being copied
+        assertTrue(Arrays.equals(data, BinaryPropertyListWriter.writeToArray(new NSArray(y))));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPropertyListWriter.write(out, new NSArray(y));
+        assertTrue(Arrays.equals(data, out.toByteArray()));
+        assertEquals(x.getBase64EncodedData(), y.getBase64EncodedData());
+        assertEquals(new NSArray(x).toASCIIPropertyList(), new NSArray(y).toASCIIPropertyList());
+        y.bytes()[0] = 42;
+        assertFalse(x.equals(y));
+        assertTrue(x.equals(((NSArray)BinaryPropertyListParser.parse(buf)).objectAtIndex(0)));
+
+        //data of memory-mapped files is copied, also when it is parsed lazily or through an index
+        File f = new File("test-files/out-testBinaryDataView.plist");
+        PropertyListParser.saveAsBinary(new NSArray(x), f);
+        NSData lazy = (NSData)((NSArray)BinaryPropertyListParser.parseLazily(f)).objectAtIndex(0);
+        NSData indexed = (NSData)BinaryPropertyListIndex.open(f).get("0");
+        for (NSData copy : new NSData[]{lazy, indexed}) {
+            assertTrue(x.equals(copy));
+            assertFalse(copy.getByteBuffer().isDirect());
+        }
+    }
+
+    /**
+     * Dictionary keys of property lists parsed with the same string pool are shared
+     */
+    public static void testBinaryStringPool() throws Exception {
+        byte[] data = test1Binary();
+        StringPool pool = new StringPool();
+        NSDictionary a = (NSDictionary)BinaryPropertyListParser.parse(ByteBuffer.wrap(data), pool);
+        NSDictionary b = (NSDictionary)BinaryPropertyListParser.parse(ByteBuffer.wrap(data), pool);
+        assertTrue(a.equals(b));
+        assertTrue(a.allKeys()[0] == b.allKeys()[0]);
+        assertTrue(a.objectForKey("keyA").toString() == b.objectForKey("keyA").toString());
+
+        //a pool shared by several threads stays within its maximum size
+        final StringPool shared = new StringPool(100, StringPool.DEFAULT_MAX_VALUE_LENGTH);
+        assertConcurrently(4, new Callable<Boolean>() {
+            public Boolean call() {
+                for (int i = 0; i < 10000; i++) {
+                    String key = "key" + (i % 200);
+                    if (!shared.intern(key).equals(key)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        });
+        assertTrue(shared.size() <= 100);
+        assertTrue(shared.intern(new String("key1")) == shared.intern(new String("key1")));
+    }
+
+    /**
+     * A parser can be reused for several property lists.
+     */
+    public static void testBinaryReuse() throws Exception {
+        byte[] data = test1Binary();
+        NSArray y = new NSArray(new NSString("a"), new NSNumber(1));
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        NSObject first = parser.read(data);
+        //a smaller property list read with the arrays of a larger one only yields its own objects
+        assertTrue(y.equals(parser.read(BinaryPropertyListWriter.writeToArray(y))));
+        parser.reset();
+        NSObject second = parser.read(ByteBuffer.wrap(data));
+        assertTrue(first.equals(second));
+        assertTrue(first != second);
+    }
+
+    /**
+     * Binary property lists are read from streams in chunks, and wrong data is rejected early.
+     */
+    public static void testBinaryStream() throws Exception {
+        NSObject x = parseTest1();
+        byte[] data = BinaryPropertyListWriter.writeToArray(x);
+        BinaryPropertyListParser parser = new BinaryPropertyListParser();
+        //exact, missing and far too large size hints, the last one is not allocated up front
+        for (int expectedSize : new int[]{data.length, 0, Integer.MAX_VALUE}) {
+            assertTrue(x.equals(parser.read(new ByteArrayInputStream(data), expectedSize)));
+        }
+
+        InputStream endless = new InputStream() {
+            public int read() {
+                return 0;
+            }
+        };
+        try {
+            parser.read(endless);
+            fail("Data without magic bytes must be rejected");
+        } catch (IllegalArgumentException ex) {
+            //rejected before the end of the stream
+        }
+    }
+
+    /**
+     * Deeply nested property lists are parsed without running out of stack space.
+     */
+    public static void testDeepNesting() throws Exception {
+        int n = 100000;
+        //array #i contains array #i+1
+        ByteBuffer buf = ByteBuffer.allocate(8 + 5 * n + 4 * n + 32);
+        buf.put("bplist00".getBytes());
+        for (int i = 0; i < n - 1; i++) {
+            buf.put((byte) 0xA1).putInt(i + 1);
+        }
+        buf.put((byte) 0xA0);
+        int offsetTableOffset = buf.position();
+        for (int i = 0; i < n; i++) {
+            buf.putInt(8 + 5 * i);
+        }
+        buf.put(new byte[6]).put((byte) 4).put((byte) 4).putLong(n).putLong(0).putLong(offsetTableOffset);
+        buf.flip();
+
+        NSObject root = BinaryPropertyListParser.parse(buf.duplicate());
+        NSObject obj = root;
+        for (int i = 0; i < n - 1; i++) {
+            obj = ((NSArray) obj).objectAtIndex(0);
+        }
+        assertEquals(0, ((NSArray) obj).count());
+        //writing it again yields the same property list
+        assertTrue(BinaryPropertyListWriter.writeToBuffer(root).equals(buf));
+
+        RecordingHandler handler = new RecordingHandler();
+        BinaryPropertyListParser.parse(buf.duplicate(), handler);
+        assertEquals(n, handler.maxDepth);
+
+        ParseLimits limits = new ParseLimits();
+        limits.setMaxDepth(1000);
+        try {
+            BinaryPropertyListParser.parse(buf.duplicate(), limits);
+            fail("The nesting depth must be limited");
+        } catch (PropertyListFormatException ex) {
+            //expected
+        }
+
+        StringBuilder xml = new StringBuilder("<plist version=\"1.0\">");
+        for (int i = 0; i < n; i++) {
+            xml.append("<array>");
+        }
+        for (int i = 0; i < n; i++) {
+            xml.append("</array>");
+        }
+        xml.append("</plist>");
+        try {
+            XMLPropertyListParser.parse(new ByteArrayInputStream(xml.toString().getBytes()), limits);
+            fail("The nesting depth must be limited");
+        } catch (PropertyListFormatException ex) {
+            //expected
+        }
+        assertTrue(XMLPropertyListParser.parse(xml.toString().getBytes()) instanceof NSArray);
+    }
+
+    /**
+     * Binary property lists can be validated without parsing them.
+     */
+    public static void testBinaryValidate() throws Exception {
+        assertTrue(BinaryPropertyListParser.validate(ByteBuffer.wrap(test1Binary())).isValid());
+
+        byte[] cyclic = new byte[]{'b', 'p', 'l', 'i', 's', 't', '0', '0',
+                (byte)0xA1, 0x00, //array containing object #0
+                0x08, //offset table
+                0, 0, 0, 0, 0, 0, 1, 1, //trailer
+                0, 0, 0, 0, 0, 0, 0, 1,
+                0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 10};
+        ValidationResult result = BinaryPropertyListParser.validate(ByteBuffer.wrap(cyclic));
+        assertFalse(result.isValid());
+        assertEquals(9, result.getOffset());
+        assertEquals(0, result.getObject());
+
+        cyclic[9] = 0x01; //reference to a missing object
+        result = BinaryPropertyListParser.validate(ByteBuffer.wrap(cyclic));
+        assertFalse(result.isValid());
+        assertEquals(9, result.getOffset());
+
+        cyclic[cyclic.length - 1] = 100; //offset table outside of the data
+        result = BinaryPropertyListParser.validate(ByteBuffer.wrap(cyclic));
+        assertFalse(result.isValid());
+        assertEquals(cyclic.length - 32, result.getOffset());
+
+        byte[] badLength = new byte[]{'b', 'p', 'l', 'i', 's', 't', '0', '0',
+                0x5F, 0x20, 0x01, 'a', //string whose length is stored as a real number
+                0x08, //offset table
+                0, 0, 0, 0, 0, 0, 1, 1, //trailer
+                0, 0, 0, 0, 0, 0, 0, 1,
+                0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 12};
+        result = BinaryPropertyListParser.validate(ByteBuffer.wrap(badLength));
+        assertFalse(result.isValid());
+        assertEquals(8, result.getOffset());
+        assertEquals(0, result.getObject());
+
+        //an offset table offset so large that adding the table size overflows
+        for (int i = badLength.length - 8; i < badLength.length; i++) {
+            badLength[i] = (byte) 0xFF;
+        }
+        badLength[badLength.length - 8] = 0x7F;
+        result = BinaryPropertyListParser.validate(ByteBuffer.wrap(badLength));
+        assertFalse(result.isValid());
+        assertEquals(badLength.length - 32, result.getOffset());
+        try {
+            BinaryPropertyListParser.parse(badLength);
+            fail("A trailer with an overflowing offset table offset was accepted");
+        } catch (PropertyListFormatException ex) {
+            //expected
+        }
+    }
+
+    /**
+     * Objects referenced multiple times in a binary property list are only parsed once.
+     */
+    public static void testBinarySharedObjects() throws Exception {
+        NSArray a = new NSArray(new NSString("shared"), new NSString("shared"), new NSNumber(42));
+        NSArray b = (NSArray)BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(a));
+        assertTrue(a.equals(b));
+        assertTrue(b.objectAtIndex(0) == b.objectAtIndex(1));
+    }
+
+    /**
+     * The binary writer merges equal values, but only merges containers that are the same instance.
+     */
+    public static void testBinaryWriterIdentity() throws Exception {
+        NSDictionary shared = new NSDictionary();
+        shared.put("key", "value");
+        NSDictionary copy = new NSDictionary();
+        copy.put("key", "value");
+        NSArray a = new NSArray(shared, shared, copy);
+        NSArray b = (NSArray)BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(a));
+        assertTrue(a.equals(b));
+        assertTrue(b.objectAtIndex(0) == b.objectAtIndex(1));
+        assertTrue(b.objectAtIndex(0) != b.objectAtIndex(2));
+        assertTrue(((NSDictionary)b.objectAtIndex(0)).objectForKey("key") == ((NSDictionary)b.objectAtIndex(2)).objectForKey("key"));
+    }
+
+    /**
+     * The binary writer produces the same bytes for equal trees, with the root object first.
+     */
+    public static void testBinaryWriterOrder() throws Exception {
+        //two separately parsed, thus differently ordered, but equal trees
+        byte[] a = test1Binary();
+        assertTrue(Arrays.equals(a, test1Binary()));
+        //the top object is object #0 and is located directly after the header
+        ByteBuffer trailer = ByteBuffer.wrap(a, a.length - 32, 32).slice();
+        assertEquals(0, trailer.getLong(16));
+        assertEquals(0xD0, a[8] & 0xF0);
+    }
+
+    /**
+     * Dictionary keys are written once per property list.
+     */
+    public static void testBinaryWriterKeys() throws Exception {
+        NSDictionary d1 = new NSDictionary();
+        d1.put("\u00e4", 1);
+        d1.put("k", 2);
+        NSDictionary d2 = new NSDictionary();
+        d2.put("\u00e4", 3);
+        d2.put("k", 4);
+        NSArray a = new NSArray(d1, d2);
+        byte[] data = BinaryPropertyListWriter.writeToArray(a);
+        assertTrue(a.equals(BinaryPropertyListParser.parse(data)));
+        //the array, two dictionaries, two keys and four numbers
+        assertEquals(9, ByteBuffer.wrap(data, data.length - 32, 32).slice().getLong(8));
+    }
+
+    /**
+     * Binary property lists larger than the writer's buffer are written to channels.
+     */
+    public static void testBinaryWriterChannel() throws Exception {
+        NSArray a = new NSArray(20000);
+        for (int i = 0; i < a.count(); i++) {
+            a.setValue(i, "string #" + i);
+        }
+        a.setValue(0, new NSData(new byte[100000]));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPropertyListWriter.write(Channels.newChannel(out), a);
+        assertTrue(Arrays.equals(BinaryPropertyListWriter.writeToArray(a), out.toByteArray()));
+        assertTrue(a.equals(BinaryPropertyListParser.parse(out.toByteArray())));
+    }
+
+    /**
+     * Property lists written into a buffer of exactly their size must match the streamed output.
+     */
+    public static void testBinaryWriterExactSize() throws Exception {
+        NSDictionary dict = new NSDictionary();
+        dict.put("data", new NSData(new byte[200000]));
+        dict.put("text", "\u00e4\u00f6\u00fc");
+        dict.put("number", 42);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPropertyListWriter.write(out, dict);
+        byte[] array = BinaryPropertyListWriter.writeToArray(dict);
+        assertEquals(out.size(), array.length);
+        assertTrue(Arrays.equals(out.toByteArray(), array));
+        ByteBuffer buffer = BinaryPropertyListWriter.writeToBuffer(dict);
+        assertTrue(buffer.isDirect());
+        assertEquals(array.length, buffer.remaining());
+        assertTrue(dict.equals(BinaryPropertyListParser.parse(buffer)));
+
+        //each object is encoded only once
+        final int[] encoded = new int[1];
+        dict.put("counted", new NSString("encoded once") {
+            @Override
+            public void toBinary(BinaryPropertyListWriter out) throws IOException {
+                encoded[0]++;
+                super.toBinary(out);
+            }
+        });
+        BinaryPropertyListWriter.writeToArray(dict);
+        assertEquals(1, encoded[0]);
+        BinaryPropertyListWriter.writeToBuffer(dict);
+        assertEquals(2, encoded[0]);
+    }
+
+    /**
+     * A property list written piece by piece must be read as the tree it describes.
+     */
+    public static void testBinaryStreamWriter() throws Exception {
+        NSDictionary rows = new NSDictionary();
+        NSArray list = new NSArray(1000);
+        for (int i = 0; i < list.count(); i++) {
+            NSDictionary row = new NSDictionary();
+            row.put("id", i);
+            row.put("name", "row #" + i);
+            list.setValue(i, row);
+        }
+        rows.put("rows", list);
+        rows.put("date", new NSDate(new Date(0)));
+        rows.put("data", new NSData(new byte[]{1, 2, 3}));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPropertyListStreamWriter w = new BinaryPropertyListStreamWriter(out);
+        w.beginDict();
+        w.key("rows");
+        w.beginArray();
+        for (int i = 0; i < list.count(); i++) {
+            w.beginDict();
+            w.key("id");
+            w.value(i);
+            w.key("name");
+            w.value("row #" + i);
+            w.endDict();
+        }
+        w.endArray();
+        w.key("date");
+        w.value(new Date(0));
+        w.key("data");
+        w.value(new NSData(new byte[]{1, 2, 3}));
+        w.endDict();
+        try {
+            w.value("second root");
+            fail("A second root object was accepted");
+        } catch (IllegalStateException ex) {
+            //expected
+        }
+        w.finish();
+        assertTrue(rows.equals(BinaryPropertyListParser.parse(out.toByteArray())));
+
+        //keys that are no longer remembered are written again, and repeated keys only once
+        NSDictionary byId = new NSDictionary();
+        ByteArrayOutputStream bounded = new ByteArrayOutputStream();
+        ByteArrayOutputStream unshared = new ByteArrayOutputStream();
+        BinaryPropertyListStreamWriter b = new BinaryPropertyListStreamWriter(bounded, 2);
+        BinaryPropertyListStreamWriter u = new BinaryPropertyListStreamWriter(unshared, 0);
+        for (BinaryPropertyListStreamWriter writer : new BinaryPropertyListStreamWriter[]{b, u}) {
+            writer.beginDict();
+            for (int i = 0; i < 100; i++) {
+                writer.key("row" + i);
+                writer.beginDict();
+                writer.key("id");
+                writer.value(i);
+                writer.endDict();
+            }
+            writer.endDict();
+            writer.finish();
+        }
+        for (int i = 0; i < 100; i++) {
+            NSDictionary row = new NSDictionary();
+            row.put("id", i);
+            byId.put("row" + i, row);
+        }
+        assertTrue(byId.equals(BinaryPropertyListParser.parse(bounded.toByteArray())));
+        assertTrue(byId.equals(BinaryPropertyListParser.parse(unshared.toByteArray())));
+        assertTrue(bounded.size() < unshared.size());
+    }
+
+    /**
+     * Each deduplication policy must produce a property list that equals the written one,
+     * merging more objects the higher the level.
+     */
+    public static void testBinaryWriterDedup() throws Exception {
+        NSArray rows = new NSArray(100);
+        for (int i = 0; i < rows.count(); i++) {
+            NSDictionary row = new NSDictionary();
+            row.put("type", "row");
+            row.put("flags", new NSArray(new NSNumber(true), new NSNumber(i % 2)));
+            row.put("data", new NSData(new byte[16]));
+            rows.setValue(i, row);
+        }
+        //the root, 100 rows of a dictionary, "row", an array, two numbers and a data object, plus 3 keys
+        assertEquals(604, writtenObjects(rows, BinaryPropertyListWriter.DEDUP_NONE));
+        //true, 0 and 1 are written once
+        assertEquals(407, writtenObjects(rows, BinaryPropertyListWriter.DEDUP_SCALARS));
+        //"row" and the data object are written once
+        assertEquals(209, writtenObjects(rows, BinaryPropertyListWriter.DEDUP_STRINGS));
+        //two distinct rows with two distinct arrays remain
+        assertEquals(13, writtenObjects(rows, BinaryPropertyListWriter.DEDUP_FULL));
+        for (int dedup = BinaryPropertyListWriter.DEDUP_NONE; dedup <= BinaryPropertyListWriter.DEDUP_FULL; dedup++) {
+            assertTrue(rows.equals(BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(rows, dedup))));
+        }
+
+        //sets with equal members are only merged if both are ordered or both are unordered
+        NSArray sets = new NSArray(new NSSet(false, new NSString("a"), new NSString("b")),
+                new NSSet(true, new NSString("a"), new NSString("b")),
+                new NSSet(true, new NSString("a"), new NSString("b")));
+        NSArray parsedSets = (NSArray)BinaryPropertyListParser.parse(BinaryPropertyListWriter.writeToArray(sets, BinaryPropertyListWriter.DEDUP_FULL));
+        assertTrue(parsedSets.objectAtIndex(0).toJavaObject() instanceof LinkedHashSet);
+        assertTrue(parsedSets.objectAtIndex(1).toJavaObject() instanceof TreeSet);
+        assertTrue(parsedSets.objectAtIndex(1) == parsedSets.objectAtIndex(2));
+    }
+
+    /**
+     * Strings must be written to XML without any shared encoder, rejecting unpaired surrogates.
+     */
+    public static void testXmlStringEncoding() throws Exception {
+        NSArray strings = new NSArray(new NSString("ascii"), new NSString("\u00e4\u20ac"), new NSString("\ud83d\ude00 <&>"));
+        String xml = strings.toXMLPropertyList();
+        assertTrue(strings.equals(XMLPropertyListParser.parse(xml.getBytes("UTF-8"))));
+        try {
+            new NSString("\ud83d").toXMLPropertyList();
+            fail("An unpaired surrogate was encoded");
+        } catch (RuntimeException ex) {
+            //expected
+        }
+    }
+
+    /**
+     * A binary property list containing an array that contains itself must be rejected.
+     */
+    public static void testBinaryCycle() throws Exception {
+        byte[] data = new byte[]{'b', 'p', 'l', 'i', 's', 't', '0', '0',
+                (byte)0xA1, 0x00, //array containing object #0
+                0x08, //offset table
+                0, 0, 0, 0, 0, 0, 1, 1, //trailer
+                0, 0, 0, 0, 0, 0, 0, 1,
+                0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 10};
+        try {
+            BinaryPropertyListParser.parse(data);
+            fail("A cyclic property list was parsed");
+        } catch (PropertyListFormatException ex) {
+            //expected
+        }
+        //lazily parsed containers are returned before their entries, the cycle must be found up front
+        try {
+            BinaryPropertyListParser.parseLazily(ByteBuffer.wrap(data));
+            fail("A cyclic property list was parsed lazily");
+        } catch (PropertyListFormatException ex) {
+            //expected
+        }
+        try {
+            BinaryPropertyListIndex.open(ByteBuffer.wrap(data));
+            fail("A cyclic property list was indexed");
+        } catch (PropertyListFormatException ex) {
+            //expected
+        }
+    }
+
+    /**
+     * Property lists exceeding the given limits or with a truncated object area must be rejected.
+     */
+    public static void testBinaryLimits() throws Exception {
+        byte[] data = test1Binary();
+
+        ParseLimits depthLimits = new ParseLimits();
+        depthLimits.setMaxDepth(1);
+        ParseLimits objectLimits = new ParseLimits();
+        objectLimits.setMaxObjects(5);
+        ParseLimits stringLimits = new ParseLimits();
+        stringLimits.setMaxStringLength(3);
+        for (ParseLimits limits : new ParseLimits[]{depthLimits, objectLimits, stringLimits}) {
+            try {
+                BinaryPropertyListParser.parse(ByteBuffer.wrap(data), limits);
+                fail("A property list exceeding the limits was parsed");
+            } catch (PropertyListFormatException ex) {
+                //expected
+            }
+        }
+
+        //the limits of one parser do not affect other parsers
+        BinaryPropertyListParser limited = new BinaryPropertyListParser();
+        limited.getLimits().setMaxObjects(5);
+        BinaryPropertyListParser unlimited = new BinaryPropertyListParser();
+        assertTrue(limited.getLimits() != unlimited.getLimits());
+        assertTrue(unlimited.getLimits().getMaxObjects() == Integer.MAX_VALUE);
+        assertTrue(unlimited.read(data) instanceof NSDictionary);
+        try {
+            limited.read(data);
+            fail("A property list exceeding the limits was parsed");
+        } catch (PropertyListFormatException ex) {
+            //expected
+        }
+
+        //an array claiming to contain 15 objects
+        byte[] truncated = new byte[]{'b', 'p', 'l', 'i', 's', 't', '0', '0',
+                (byte)0xAF, 0x10, 0x0F, 0x00,
+                0x08, //offset table
+                0, 0, 0, 0, 0, 0, 1, 1, //trailer
+                0, 0, 0, 0, 0, 0, 0, 1,
+                0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 12};
+        try {
+            BinaryPropertyListParser.parse(truncated);
+            fail("A truncated property list was parsed");
+        } catch (PropertyListFormatException ex) {
+            //expected
+        }
+    }
+
+    /**
+     * Test the object types of binary property lists v1.0
+     */
+    public static void testBinaryVersion10() throws Exception {
+        byte[] data = new byte[]{'b', 'p', 'l', 'i', 's', 't', '1', '0',
+                (byte)0xA5, 1, 2, 3, 4, 5, //array
+                0x00, //null
+                0x0E, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, //UUID
+                0x0D, 0x0C, 0x5B, 'h', 't', 't', 'p', ':', '/', '/', 'a', '/', 'b', '/', 0x51, 'c', //URL with base URL
+                0x72, (byte)0xC3, (byte)0xA4, //UTF-8 string
+                (byte)0xB2, 7, 6, //ordered set, whose entries are sorted
+                0x51, 'x',
+                0x51, 'y',
+                8, 14, 15, 32, 48, 51, 54, 56, //offset table
+                0, 0, 0, 0, 0, 0, 1, 1, //trailer
+                0, 0, 0, 0, 0, 0, 0, 8,
+                0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 58};
+        NSArray a = (NSArray)BinaryPropertyListParser.parse(data);
+        assertTrue(a.count() == 5);
+        assertTrue(a.objectAtIndex(0) == null);
+        assertTrue(((NSData)a.objectAtIndex(1)).length() == 16);
+        assertTrue(a.objectAtIndex(2).equals(new NSString("http://a/b/c")));
+        assertTrue(a.objectAtIndex(3).equals(new NSString("\u00e4")));
+        NSSet s = (NSSet)a.objectAtIndex(4);
+        assertTrue(s.allObjects()[0].equals(new NSString("x")));
+        assertTrue(s.allObjects()[1].equals(new NSString("y")));
+        //null entries are found and compared, but cannot be written as XML
+        assertTrue(a.containsObject(null) && a.indexOfObject(null) == 0);
+        assertTrue(a.containsObject(new NSString("http://a/b/c")));
+        assertTrue(a.equals(BinaryPropertyListParser.parse(data)));
+        try {
+            a.toXMLPropertyList();
+            fail("A null value was written as XML");
+        } catch (UnsupportedOperationException ex) {
+            //expected
+        }
+
+        //v1.5 property lists have no trailer, and unknown versions are rejected as well
+        for (String version : new String[]{"15", "16", "11", "20"}) {
+            data[6] = (byte) version.charAt(0);
+            data[7] = (byte) version.charAt(1);
+            try {
+                BinaryPropertyListParser.parse(data);
+                fail("A bplist" + version + " was parsed");
+            } catch (PropertyListFormatException ex) {
+                //expected
+            }
+        }
+    }
+
     /**
      *  NSSet only occurs in binary property lists, so we have to test it separately.
-     *  NSSets are not yet supported in reading/writing, as binary property list format v1+ is required.
+     *  Null values can also only be stored in binary property lists.
      */
-    /*public static void testSet() throws Exception {
+    public static void testSet() throws Exception {
         NSSet s = new NSSet();
         s.addObject(new NSNumber(1));
         s.addObject(new NSNumber(3));
         s.addObject(new NSNumber(2));
 
         NSSet orderedSet = new NSSet(true);
-        s.addObject(new NSNumber(1));
-        s.addObject(new NSNumber(3));
-        s.addObject(new NSNumber(2));
+        orderedSet.addObject(new NSNumber(1));
+        orderedSet.addObject(new NSNumber(3));
+        orderedSet.addObject(new NSNumber(2));
 
         NSDictionary dict = new NSDictionary();
         dict.put("set1", s);
         dict.put("set2", orderedSet);
+        dict.put("array", new NSArray(new NSObject[]{new NSString("a"), null}));
 
         PropertyListParser.saveAsBinary(dict, new File("test-files/out-testSet.plist"));
         NSObject parsedRoot = PropertyListParser.parse(new File("test-files/out-testSet.plist"));
         assertTrue(parsedRoot.equals(dict));
-    }*/
+        assertTrue(((NSArray)((NSDictionary)parsedRoot).objectForKey("array")).objectAtIndex(1) == null);
+    }
 
     public static void testASCII() throws Exception {
         NSObject x = PropertyListParser.parse(new File("test-files/test1-ascii.plist"));
@@ -199,9 +961,89 @@ public class ParseTest extends TestCase {
         assertTrue(((NSNumber)dict.objectForKey("long")).longValue() == lng);
         assertTrue(((NSDate)dict.objectForKey("date")).getDate().equals(date));
         Object unwrappedO = wrappedO.toJavaObject();
-        Map map2 = (Map)unwrappedO;
+        Map<?, ?> map2 = (Map<?, ?>)unwrappedO;
         assertTrue(((Integer)map.get("int")) == i);
         assertTrue(((Long)map.get("long")) == lng);
         assertTrue(((Date)map.get("date")).equals(date));
     }
+
+    /**
+     * Parses test1.plist, the example property list the binary tests start from.
+     */
+    private static NSDictionary parseTest1() throws Exception {
+        return (NSDictionary)PropertyListParser.parse(new File("test-files/test1.plist"));
+    }
+
+    /**
+     * Writes test1.plist as a binary property list.
+     */
+    private static byte[] test1Binary() throws Exception {
+        return BinaryPropertyListWriter.writeToArray(parseTest1());
+    }
+
+    /**
+     * Writes a binary property list and reads the number of written objects from its trailer.
+     */
+    private static long writtenObjects(NSObject root, int dedup) throws Exception {
+        byte[] data = BinaryPropertyListWriter.writeToArray(root, dedup);
+        return ByteBuffer.wrap(data).getLong(data.length - 24);
+    }
+
+    /**
+     * Runs a task in several threads at once and checks that it succeeds in each of them.
+     */
+    private static void assertConcurrently(int threads, Callable<Boolean> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(task));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Records the structure of the property lists reported to it.
+     */
+    private static class RecordingHandler implements PropertyListHandler {
+        final List<String> keys = new ArrayList<String>();
+        long integerSum;
+        int depth;
+        int maxDepth;
+        int orderedSets;
+        int unorderedSets;
+        int nullValues;
+
+        private void enter() {
+            maxDepth = Math.max(maxDepth, ++depth);
+        }
+
+        public void startDictionary(int count) { enter(); }
+        public void key(String key) { keys.add(key); }
+        public void endDictionary() { depth--; }
+        public void startArray(int count) { enter(); }
+        public void endArray() { depth--; }
+        public void startSet(int count, boolean ordered) {
+            enter();
+            if (ordered) {
+                orderedSets++;
+            } else {
+                unorderedSets++;
+            }
+        }
+        public void endSet() { depth--; }
+        public void string(String value) { }
+        public void integer(long value) { integerSum += value; }
+        public void real(double value) { }
+        public void bool(boolean value) { }
+        public void date(Date value) { }
+        public void data(ByteBuffer value) { }
+        public void uid(byte[] value) { }
+        public void nullValue() { nullValues++; }
+    }
 }